@@ -0,0 +1,136 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compare the original method invoked by reflection, by the
+ * {@link MethodInvokers} and through a proxy by the {@link MethodDispatcher}.
+ * Run with {@code mvn -P jmh test-compile exec:exec}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MethodInvokerBenchmark {
+
+    public static class Counter {
+
+        private int count;
+
+        public int add(int a, int b) {
+            return a + b;
+        }
+
+        public int next() {
+            return ++count;
+        }
+
+    }
+
+    private Counter counter;
+
+    private Method add;
+
+    private MethodInvoker invoker;
+
+    private Counter reflectiveProxy;
+
+    private Counter interceptedProxy;
+
+    private Counter primitiveProxy;
+
+    private int value;
+
+    @Setup
+    public void setup() throws Exception {
+        counter = new Counter();
+        add = Counter.class.getMethod("add", int.class, int.class);
+        invoker = MethodInvokers.of(add);
+        Method next = Counter.class.getMethod("next");
+        ProxyFactory factory = new InstanceProxy().instanceFactory(
+                Counter.class, new Method[] { add, next }, null);
+        InvocationHandler reflective =
+                (proxy, method, args) -> method.invoke(proxy, args);
+        MethodInterceptor intercepted =
+                (proxy, method, args, invoker) -> invoker.invoke(proxy, args);
+        PrimitiveInterceptor primitive = new PrimitiveInterceptor() {
+
+            @Override
+            public Object intercept(Object proxy, Method method,
+                    Object[] args, MethodInvoker invoker) throws Throwable {
+                return invoker.invoke(proxy, args);
+            }
+
+            @Override
+            public int interceptInt(Object proxy, Method method,
+                    PrimitiveInvoker invoker) throws Throwable {
+                return invoker.invokeInt(proxy);
+            }
+
+        };
+        reflectiveProxy = (Counter) factory.newInstance(reflective);
+        interceptedProxy = (Counter) factory.newInstance(intercepted);
+        primitiveProxy = (Counter) factory.newInstance(primitive);
+    }
+
+    @Benchmark
+    public int direct() {
+        return counter.add(value++, 1);
+    }
+
+    @Benchmark
+    public Object reflection() throws Exception {
+        return add.invoke(counter, value++, 1);
+    }
+
+    @Benchmark
+    public Object methodInvoker() throws Throwable {
+        return invoker.invoke(counter, value++, 1);
+    }
+
+    @Benchmark
+    public int proxyReflection() {
+        return reflectiveProxy.add(value++, 1);
+    }
+
+    @Benchmark
+    public int proxyDispatcher() {
+        return interceptedProxy.add(value++, 1);
+    }
+
+    @Benchmark
+    public int proxyPrimitiveDispatcher() {
+        return primitiveProxy.next();
+    }
+
+}
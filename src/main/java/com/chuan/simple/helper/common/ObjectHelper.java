@@ -27,6 +27,8 @@ public final class ObjectHelper {
 
     public static final Object EMPTY = new Object();
 
+    public static final Object[] ARRAY_EMPTY = new Object[0];
+
 
     /**
      * @see System#identityHashCode(Object)
@@ -16,13 +16,25 @@
 package com.chuan.simple.helper.expression;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
 
 import com.chuan.simple.helper.common.StringHelper;
 
 /**
  * Tools for resolving expressions such as place holder.
+ * <p>
+ * {@code resolvePlaceholders} replaces each placeholder by its raw value in
+ * one pass: the replaced values are not expanded again, an empty value keeps
+ * the placeholder and there is no default value.
+ * <p>
+ * {@code expandPlaceholders} goes through a {@link PlaceholderResolver}: the
+ * values are expanded recursively, ${xxx:default} is supported, an empty
+ * value replaces the placeholder and circular references throw a
+ * {@link com.chuan.simple.helper.exception.SimpleHelperException}.
  */
 public final class ExpressionHelper {
 
@@ -58,6 +70,35 @@ public final class ExpressionHelper {
      */
     public static String resolvePlaceholders(String text, Map<?, ?> properties,
             String placeholderPrefix, String placeholderSuffix) {
+        return resolvePlaceholders(text, properties::get, placeholderPrefix,
+                placeholderSuffix);
+    }
+
+    /**
+     * @see #resolvePlaceholders(String, PropertySources, String, String)
+     */
+    public static String resolvePlaceholders(String text,
+            PropertySources propertySources) {
+        return resolvePlaceholders(text, propertySources,
+                PLACEHOLDER_PREFIX_DOLLAR_BRACES, PLACEHOLDER_SUFFIX_BRACES);
+    }
+
+    /**
+     * Resolve placeholders like ${xxx} which will be replace by values in
+     * {@code propertySources}, the first source which contains the key takes
+     * precedence.
+     * @see #resolvePlaceholders(String, Map, String, String)
+     */
+    public static String resolvePlaceholders(String text,
+            PropertySources propertySources, String placeholderPrefix,
+            String placeholderSuffix) {
+        return resolvePlaceholders(text, propertySources::getProperty,
+                placeholderPrefix, placeholderSuffix);
+    }
+
+    private static String resolvePlaceholders(String text,
+            Function<String, ?> properties, String placeholderPrefix,
+            String placeholderSuffix) {
         if (StringHelper.isEmpty(text)) {
             return text;
         }
@@ -75,7 +116,8 @@ public final class ExpressionHelper {
                     startIndex + placeholderPrefix.length(), endIndex);
             placeHolder = resolvePlaceholders(placeHolder, properties,
                     placeholderPrefix, placeholderSuffix);
-            String value = (String) properties.get(placeHolder);
+            String value =
+                    StringHelper.toString(properties.apply(placeHolder));
             if (StringHelper.isNotEmpty(value)) {
                 result.replace(startIndex,
                         endIndex + placeholderSuffix.length(), value);
@@ -90,30 +132,123 @@ public final class ExpressionHelper {
     }
 
     /**
-     * @see #resolvePlaceholders(String, Map)
+     * Expand placeholders like ${xxx} or ${xxx:default} recursively, each key
+     * is expanded at most once and circular references are reported.
+     * @see PlaceholderResolver
+     */
+    public static String expandPlaceholders(String text,
+            Map<?, ?> properties) {
+        return new PlaceholderResolver(properties).resolve(text);
+    }
+
+    /**
+     * @see #expandPlaceholders(String, Map)
+     */
+    public static String expandPlaceholders(String text,
+            PropertySources propertySources) {
+        return new PlaceholderResolver(propertySources).resolve(text);
+    }
+
+    /**
+     * Expand placeholders of each text, all the texts share the expanded
+     * values. The texts will be resolved in parallel if the count of them is
+     * greater than {@link PlaceholderResolver#DEFAULT_PARALLEL_THRESHOLD},
+     * use a {@link PlaceholderResolver} to choose another threshold.
+     * @see #expandPlaceholders(String, Map)
+     * @see PlaceholderResolver#resolve(String[], ForkJoinPool)
+     */
+    public static List<String> expandPlaceholders(List<String> texts,
+            Map<?, ?> properties) {
+        return new PlaceholderResolver(properties).resolve(texts);
+    }
+
+    /**
+     * @see #expandPlaceholders(List, Map)
+     */
+    public static List<String> expandPlaceholders(List<String> texts,
+            PropertySources propertySources) {
+        return new PlaceholderResolver(propertySources).resolve(texts);
+    }
+
+    /**
+     * @see #expandPlaceholders(List, Map)
+     */
+    public static String[] expandPlaceholders(String[] texts,
+            Map<?, ?> properties) {
+        return new PlaceholderResolver(properties).resolve(texts);
+    }
+
+    /**
+     * @see #expandPlaceholders(List, Map)
+     */
+    public static String[] expandPlaceholders(String[] texts,
+            PropertySources propertySources) {
+        return new PlaceholderResolver(propertySources).resolve(texts);
+    }
+
+    /**
+     * @see #resolvePlaceholders(String[], Map, int)
      */
     public static List<String> resolvePlaceholders(List<String> texts,
             Map<?, ?> properties) {
-        List<String> result = new ArrayList<>(texts.size());
-        for (String text : texts) {
-            result.add(resolvePlaceholders(text, properties));
-        }
-        return result;
+        return new ArrayList<>(Arrays.asList(resolvePlaceholders(
+                texts.toArray(new String[texts.size()]), properties)));
     }
 
     /**
-     * @see #resolvePlaceholders(String, Map)
+     * @see #resolvePlaceholders(String[], Map, int)
      */
     public static String[] resolvePlaceholders(String[] texts,
             Map<?, ?> properties) {
-        String[] result = new String[texts.length];
-        for (int i = 0; i < result.length; i++) {
-            result[i] = resolvePlaceholders(texts[i], properties);
-        }
-        return result;
+        return resolvePlaceholders(texts, properties,
+                PlaceholderResolver.DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Resolve placeholders of each text, the order of the result is the same
+     * as {@code texts}.
+     * @param parallelThreshold
+     *            the texts will be split across the common
+     *            {@link ForkJoinPool} if the count of them is greater than it
+     * @see #resolvePlaceholders(String, Map)
+     */
+    public static String[] resolvePlaceholders(String[] texts,
+            Map<?, ?> properties, int parallelThreshold) {
+        return PlaceholderResolver.resolve(texts,
+                text -> resolvePlaceholders(text, properties),
+                parallelThreshold, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @see #resolvePlaceholders(String[], PropertySources, int)
+     */
+    public static List<String> resolvePlaceholders(List<String> texts,
+            PropertySources propertySources) {
+        return new ArrayList<>(Arrays.asList(resolvePlaceholders(
+                texts.toArray(new String[texts.size()]), propertySources)));
+    }
+
+    /**
+     * @see #resolvePlaceholders(String[], PropertySources, int)
+     */
+    public static String[] resolvePlaceholders(String[] texts,
+            PropertySources propertySources) {
+        return resolvePlaceholders(texts, propertySources,
+                PlaceholderResolver.DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * @see #resolvePlaceholders(String[], Map, int)
+     * @see #resolvePlaceholders(String, PropertySources)
+     */
+    public static String[] resolvePlaceholders(String[] texts,
+            PropertySources propertySources, int parallelThreshold) {
+        return PlaceholderResolver.resolve(texts,
+                text -> resolvePlaceholders(text, propertySources),
+                parallelThreshold, ForkJoinPool.commonPool());
     }
 
-    private static int findMatchEndIndex(CharSequence str, int startIndex,
+    static int findMatchEndIndex(CharSequence str, int startIndex,
             String placeholderPrefix, String placeholderSuffix) {
         for (int i = startIndex,subPlaceholderCount = 0; i < str.length(); i++) {
             if (subStringMatch(str, i, placeholderPrefix)) {
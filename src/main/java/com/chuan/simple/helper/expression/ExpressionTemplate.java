@@ -0,0 +1,339 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.expression;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import com.chuan.simple.helper.common.StringHelper;
+import com.chuan.simple.helper.expression.math.MathExpressionHelper;
+
+/**
+ * <p>
+ * A compiled text which contains placeholders like ${xxx} and inline math
+ * expressions, it works like
+ * <pre>
+ * {@code
+ *  MathExpressionHelper.parseComplexExpression(
+ *          ExpressionHelper.resolvePlaceholders(text, properties));
+ * }
+ * </pre>
+ * but renders the final text in one pass, without the intermediate text and
+ * regex scanning. The results are the same when the resolved text starts
+ * with a math expression, otherwise they differ:
+ * <ul>
+ * <li>the text before the first math expression is kept, while
+ * {@code parseComplexExpression} drops it;</li>
+ * <li>a text without math expression is rendered as it is, while
+ * {@code parseComplexExpression} returns an empty string.</li>
+ * </ul>
+ * <p>
+ * The text is compiled into segments once, math expressions which contain
+ * no placeholder are calculated while compiling. A template is immutable
+ * and can be rendered concurrently.
+ * @see ExpressionHelper#resolvePlaceholders(String, Map)
+ * @see MathExpressionHelper#parseComplexExpression(String)
+ */
+public final class ExpressionTemplate {
+
+    private static final int TEXT = 0;
+
+    private static final int MATH = 1;
+
+    private static final int PLACEHOLDER = 2;
+
+    private final String text;
+
+    private final String placeholderPrefix;
+
+    private final String placeholderSuffix;
+
+    private final Segment[] segments;
+
+    private ExpressionTemplate(String text, String placeholderPrefix,
+            String placeholderSuffix) {
+        this.text = text;
+        this.placeholderPrefix = placeholderPrefix;
+        this.placeholderSuffix = placeholderSuffix;
+        this.segments = fold(compile(text, true));
+    }
+
+    /**
+     * @see #compile(String, String, String)
+     */
+    public static ExpressionTemplate compile(String text) {
+        return compile(text, ExpressionHelper.PLACEHOLDER_PREFIX_DOLLAR_BRACES,
+                ExpressionHelper.PLACEHOLDER_SUFFIX_BRACES);
+    }
+
+    /**
+     * Compile {@code text} to template.
+     * @param text
+     *            the text contains placeholders and math expressions
+     * @param placeholderPrefix
+     *            placeholder prefix like
+     *            {@link ExpressionHelper#PLACEHOLDER_PREFIX_DOLLAR_BRACES}
+     * @param placeholderSuffix
+     *            placeholder suffix like
+     *            {@link ExpressionHelper#PLACEHOLDER_SUFFIX_BRACES}
+     */
+    public static ExpressionTemplate compile(String text,
+            String placeholderPrefix, String placeholderSuffix) {
+        if (text == null) {
+            throw new IllegalArgumentException("Invalid parameter " + text);
+        }
+        return new ExpressionTemplate(text, placeholderPrefix,
+                placeholderSuffix);
+    }
+
+    public String render(Map<?, ?> properties) {
+        return render(properties::get);
+    }
+
+    public String render(PropertySources propertySources) {
+        return render(propertySources::getProperty);
+    }
+
+    /**
+     * Render the template with values supplied by {@code properties}.
+     */
+    public String render(Function<String, ?> properties) {
+        Renderer renderer = new Renderer(text.length() + 16);
+        for (Segment segment : segments) {
+            switch (segment.type) {
+            case TEXT:
+                renderer.appendText(segment.text);
+                break;
+            case MATH:
+                renderer.appendMath(segment.text);
+                break;
+            default:
+                String key = renderKey(segment, properties);
+                String value = StringHelper.toString(properties.apply(key));
+                if (StringHelper.isNotEmpty(value)) {
+                    renderer.appendValue(value);
+                } else {
+                    renderer.appendValue(placeholderPrefix);
+                    renderer.appendValue(key);
+                    renderer.appendValue(placeholderSuffix);
+                }
+            }
+        }
+        return renderer.finish();
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    private String renderKey(Segment placeholder,
+            Function<String, ?> properties) {
+        if (placeholder.text != null) {
+            return placeholder.text;
+        }
+        StringBuilder key = new StringBuilder();
+        for (Segment segment : placeholder.key) {
+            if (segment.type != PLACEHOLDER) {
+                key.append(segment.text);
+                continue;
+            }
+            String nestedKey = renderKey(segment, properties);
+            String value = StringHelper.toString(properties.apply(nestedKey));
+            if (StringHelper.isNotEmpty(value)) {
+                key.append(value);
+            } else {
+                key.append(placeholderPrefix).append(nestedKey)
+                        .append(placeholderSuffix);
+            }
+        }
+        return key.toString();
+    }
+
+    private List<Segment> compile(String text, boolean math) {
+        List<Segment> segments = new ArrayList<>();
+        int fromIndex = 0;
+        int startIndex = text.indexOf(placeholderPrefix);
+        while (startIndex >= 0) {
+            addLiteral(segments, text, fromIndex, startIndex, math);
+            int bodyIndex = startIndex + placeholderPrefix.length();
+            int endIndex = ExpressionHelper.findMatchEndIndex(text, bodyIndex,
+                    placeholderPrefix, placeholderSuffix);
+            if (endIndex < 0) {
+                throw new IllegalArgumentException(text);
+            }
+            List<Segment> key =
+                    compile(text.substring(bodyIndex, endIndex), false);
+            segments.add(new Segment(key.toArray(new Segment[key.size()])));
+            fromIndex = endIndex + placeholderSuffix.length();
+            startIndex = text.indexOf(placeholderPrefix, fromIndex);
+        }
+        addLiteral(segments, text, fromIndex, text.length(), math);
+        return segments;
+    }
+
+    private void addLiteral(List<Segment> segments, String text, int from,
+            int to, boolean math) {
+        if (from >= to) {
+            return;
+        }
+        if (!math) {
+            segments.add(new Segment(TEXT, text.substring(from, to)));
+            return;
+        }
+        int start = from;
+        boolean isMath =
+                MathExpressionHelper.isExpressionChar(text.charAt(from));
+        for (int i = from + 1; i <= to; i++) {
+            if (i < to && MathExpressionHelper
+                    .isExpressionChar(text.charAt(i)) == isMath) {
+                continue;
+            }
+            segments.add(new Segment(isMath ? MATH : TEXT,
+                    text.substring(start, i)));
+            start = i;
+            isMath = !isMath;
+        }
+    }
+
+    /**
+     * Calculate math expressions which are surrounded by texts and merge
+     * adjacent texts.
+     */
+    private Segment[] fold(List<Segment> segments) {
+        List<Segment> folded = new ArrayList<>(segments.size());
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            if (segment.type == MATH && isText(segments, i - 1)
+                    && isText(segments, i + 1)) {
+                String result =
+                        MathExpressionHelper.parseExpression(segment.text);
+                segment = new Segment(TEXT, result == null ? "" : result);
+            }
+            int last = folded.size() - 1;
+            if (segment.type == TEXT && last >= 0
+                    && folded.get(last).type == TEXT) {
+                segment = new Segment(TEXT,
+                        folded.get(last).text + segment.text);
+                folded.set(last, segment);
+            } else {
+                folded.add(segment);
+            }
+        }
+        return folded.toArray(new Segment[folded.size()]);
+    }
+
+    private static boolean isText(List<Segment> segments, int index) {
+        return index < 0 || index >= segments.size()
+                || segments.get(index).type == TEXT;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    private static class Segment {
+
+        private final int type;
+
+        /** The literal text,or the key of placeholder without nesting. */
+        private final String text;
+
+        private final Segment[] key;
+
+        private Segment(int type, String text) {
+            this.type = type;
+            this.text = text;
+            this.key = null;
+        }
+
+        private Segment(Segment[] key) {
+            this.type = PLACEHOLDER;
+            this.key = key;
+            if (key.length == 0) {
+                this.text = "";
+            } else if (key.length == 1 && key[0].type == TEXT) {
+                this.text = key[0].text;
+            } else {
+                this.text = null;
+            }
+        }
+
+    }
+
+    /**
+     * Collects the result, math expression is calculated as soon as it
+     * ends.
+     */
+    private static class Renderer {
+
+        private final StringBuilder result;
+
+        private int mathStart = -1;
+
+        private Renderer(int capacity) {
+            this.result = new StringBuilder(capacity);
+        }
+
+        private void appendText(String text) {
+            calculate();
+            result.append(text);
+        }
+
+        private void appendMath(String math) {
+            if (mathStart < 0) {
+                mathStart = result.length();
+            }
+            result.append(math);
+        }
+
+        private void appendValue(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (MathExpressionHelper.isExpressionChar(c)) {
+                    if (mathStart < 0) {
+                        mathStart = result.length();
+                    }
+                } else {
+                    calculate();
+                }
+                result.append(c);
+            }
+        }
+
+        private void calculate() {
+            if (mathStart < 0) {
+                return;
+            }
+            String calculated = MathExpressionHelper.parseExpression(result,
+                    mathStart, result.length());
+            result.setLength(mathStart);
+            if (calculated != null) {
+                result.append(calculated);
+            }
+            mathStart = -1;
+        }
+
+        private String finish() {
+            calculate();
+            return result.toString();
+        }
+
+    }
+
+}
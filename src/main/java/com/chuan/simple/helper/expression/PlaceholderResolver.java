@@ -0,0 +1,337 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.expression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+
+import com.chuan.simple.helper.common.StringHelper;
+import com.chuan.simple.helper.exception.SimpleHelperException;
+
+/**
+ * <p>
+ * Expand placeholders like ${xxx} recursively, the value of a placeholder
+ * will be expanded too.
+ * <p>
+ * Each key is expanded at most once by the same resolver and the expanded
+ * value is reused, so a resolver stands for one resolution pass. Circular
+ * references are reported with the key path.
+ * <p>
+ * Default value is supported like ${key:default}, it is only used when there
+ * is no value of the key.
+ * <p>
+ * A resolver is thread safe, the bulk methods share the expanded values
+ * across all the texts and split inputs larger than
+ * {@link #getParallelThreshold()} across a {@link ForkJoinPool}.
+ */
+public class PlaceholderResolver {
+
+    /** Separator between a placeholder key and its default value: ":". */
+    public static final String DEFAULT_VALUE_SEPARATOR = ":";
+
+    /** Default count of texts above which bulk resolution is parallel. */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 4096;
+
+    private static final Object MISSING = new Object();
+
+    /** The minimum count of texts resolved by one task. */
+    private static final int MIN_BATCH_SIZE = 256;
+
+    private final Function<String, ?> properties;
+
+    private final String placeholderPrefix;
+
+    private final String placeholderSuffix;
+
+    private final String valueSeparator;
+
+    private final Map<String, Object> resolved = new ConcurrentHashMap<>(64);
+
+    private volatile int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+    public PlaceholderResolver(Map<?, ?> properties) {
+        this(properties::get);
+    }
+
+    public PlaceholderResolver(PropertySources propertySources) {
+        this(propertySources::getProperty);
+    }
+
+    public PlaceholderResolver(Function<String, ?> properties) {
+        this(properties, ExpressionHelper.PLACEHOLDER_PREFIX_DOLLAR_BRACES,
+                ExpressionHelper.PLACEHOLDER_SUFFIX_BRACES,
+                DEFAULT_VALUE_SEPARATOR);
+    }
+
+    /**
+     * @param properties
+     *            lookup of the raw value by key
+     * @param placeholderPrefix
+     *            placeholder prefix like
+     *            {@link ExpressionHelper#PLACEHOLDER_PREFIX_DOLLAR_BRACES}
+     * @param placeholderSuffix
+     *            placeholder suffix like
+     *            {@link ExpressionHelper#PLACEHOLDER_SUFFIX_BRACES}
+     * @param valueSeparator
+     *            separator of default value like
+     *            {@link #DEFAULT_VALUE_SEPARATOR},null means no default value
+     *            supported
+     */
+    public PlaceholderResolver(Function<String, ?> properties,
+            String placeholderPrefix, String placeholderSuffix,
+            String valueSeparator) {
+        this.properties = properties;
+        this.placeholderPrefix = placeholderPrefix;
+        this.placeholderSuffix = placeholderSuffix;
+        this.valueSeparator =
+                StringHelper.isEmpty(valueSeparator) ? null : valueSeparator;
+    }
+
+    /**
+     * Expand the placeholders of {@code text}.
+     * @throws SimpleHelperException
+     *             if there are circular references
+     */
+    public String resolve(String text) {
+        if (StringHelper.isEmpty(text)) {
+            return text;
+        }
+        return expand(text, new LinkedHashSet<>());
+    }
+
+    /**
+     * @see #resolve(String[], ForkJoinPool)
+     */
+    public List<String> resolve(List<String> texts) {
+        String[] result = resolve(texts.toArray(new String[texts.size()]),
+                ForkJoinPool.commonPool());
+        return new ArrayList<>(Arrays.asList(result));
+    }
+
+    /**
+     * @see #resolve(String[], ForkJoinPool)
+     */
+    public String[] resolve(String[] texts) {
+        return resolve(texts, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Expand the placeholders of each text, the order of the result is the
+     * same as {@code texts}. The texts will be split across {@code pool} if
+     * the count of them is greater than {@link #getParallelThreshold()}.
+     * @param texts
+     *            the texts contain placeholders
+     * @param pool
+     *            the pool to run on
+     */
+    public String[] resolve(String[] texts, ForkJoinPool pool) {
+        return resolve(texts, this::resolve, parallelThreshold, pool);
+    }
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Get the expanded value of {@code key}.
+     * @return null if there is no value of the key
+     */
+    public String getValue(String key) {
+        return value(key, new LinkedHashSet<>());
+    }
+
+    /**
+     * Forget the expanded values so that a new pass can be started.
+     */
+    public void clear() {
+        resolved.clear();
+    }
+
+    /**
+     * Apply {@code resolver} to each text, the texts are split across
+     * {@code pool} if the count of them is greater than
+     * {@code parallelThreshold}.
+     */
+    static String[] resolve(String[] texts, Function<String, String> resolver,
+            int parallelThreshold, ForkJoinPool pool) {
+        String[] result = new String[texts.length];
+        if (texts.length <= parallelThreshold
+                || pool.getParallelism() <= 1) {
+            resolve(texts, result, resolver, 0, texts.length);
+        } else {
+            int batchSize = Math.max(MIN_BATCH_SIZE,
+                    texts.length / (pool.getParallelism() << 2));
+            pool.invoke(new ResolveTask(texts, result, resolver, 0,
+                    texts.length, batchSize));
+        }
+        return result;
+    }
+
+    private static void resolve(String[] texts, String[] result,
+            Function<String, String> resolver, int from, int to) {
+        for (int i = from; i < to; i++) {
+            result[i] = resolver.apply(texts[i]);
+        }
+    }
+
+    private String expand(String text, Set<String> path) {
+        int startIndex = text.indexOf(placeholderPrefix);
+        if (startIndex < 0) {
+            return text;
+        }
+        StringBuilder result = new StringBuilder(text.length() + 16);
+        int endIndex = -placeholderSuffix.length();
+        while (startIndex >= 0) {
+            result.append(text, endIndex + placeholderSuffix.length(),
+                    startIndex);
+            int bodyIndex = startIndex + placeholderPrefix.length();
+            endIndex = ExpressionHelper.findMatchEndIndex(text, bodyIndex,
+                    placeholderPrefix, placeholderSuffix);
+            if (endIndex < 0) {
+                throw new IllegalArgumentException(text);
+            }
+            int separatorIndex = findSeparatorIndex(text, bodyIndex, endIndex);
+            String key = expand(text.substring(bodyIndex,
+                    separatorIndex < 0 ? endIndex : separatorIndex), path);
+            String value = value(key, path);
+            if (value == null && separatorIndex >= 0) {
+                value = expand(text.substring(
+                        separatorIndex + valueSeparator.length(), endIndex),
+                        path);
+            }
+            if (value != null) {
+                result.append(value);
+            } else {
+                result.append(placeholderPrefix).append(key)
+                        .append(placeholderSuffix);
+            }
+            startIndex = text.indexOf(placeholderPrefix,
+                    endIndex + placeholderSuffix.length());
+        }
+        result.append(text, endIndex + placeholderSuffix.length(),
+                text.length());
+        return result.toString();
+    }
+
+    private String value(String key, Set<String> path) {
+        Object value = resolved.get(key);
+        if (value != null) {
+            return value == MISSING ? null : (String) value;
+        }
+        if (!path.add(key)) {
+            throw new SimpleHelperException(
+                    "Circular placeholder reference " + toPath(path, key));
+        }
+        try {
+            Object raw = properties.apply(key);
+            value = raw == null ? MISSING : expand(raw.toString(), path);
+        } finally {
+            path.remove(key);
+        }
+        resolved.putIfAbsent(key, value);
+        return value == MISSING ? null : (String) value;
+    }
+
+    /**
+     * Find the first separator out of the nested placeholders.
+     */
+    private int findSeparatorIndex(String text, int startIndex,
+            int endIndex) {
+        if (valueSeparator == null) {
+            return -1;
+        }
+        for (int i = startIndex, depth = 0; i < endIndex; i++) {
+            if (text.startsWith(placeholderPrefix, i)) {
+                depth++;
+                i += placeholderPrefix.length() - 1;
+            } else if (depth > 0 && text.startsWith(placeholderSuffix, i)) {
+                depth--;
+                i += placeholderSuffix.length() - 1;
+            } else if (depth == 0 && text.startsWith(valueSeparator, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String toPath(Set<String> path, String key) {
+        StringBuilder result = new StringBuilder();
+        boolean inCycle = false;
+        for (String entry : path) {
+            inCycle |= entry.equals(key);
+            if (inCycle) {
+                result.append(entry).append(" -> ");
+            }
+        }
+        return result.append(key).toString();
+    }
+
+    private static class ResolveTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String[] texts;
+
+        private final String[] result;
+
+        private final Function<String, String> resolver;
+
+        private final int from;
+
+        private final int to;
+
+        private final int batchSize;
+
+        private ResolveTask(String[] texts, String[] result,
+                Function<String, String> resolver, int from, int to,
+                int batchSize) {
+            this.texts = texts;
+            this.result = result;
+            this.resolver = resolver;
+            this.from = from;
+            this.to = to;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= batchSize) {
+                resolve(texts, result, resolver, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(
+                    new ResolveTask(texts, result, resolver, from, middle,
+                            batchSize),
+                    new ResolveTask(texts, result, resolver, middle, to,
+                            batchSize));
+        }
+
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.expression;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import com.chuan.simple.helper.resource.ResourceHelper;
+
+/**
+ * A named layer of properties used by {@link PropertySources}. The properties
+ * are loaded by a {@link Supplier} so that the layer can be reloaded.
+ */
+public class PropertySource {
+
+    public static final String SYSTEM_PROPERTIES = "systemProperties";
+
+    public static final String SYSTEM_ENVIRONMENT = "systemEnvironment";
+
+    private final String name;
+
+    private final Supplier<? extends Map<?, ?>> loader;
+
+    private volatile Map<?, ?> properties;
+
+    public PropertySource(String name, Map<?, ?> properties) {
+        this.name = name;
+        this.loader = null;
+        this.properties =
+                properties == null ? Collections.emptyMap() : properties;
+    }
+
+    public PropertySource(String name, Supplier<? extends Map<?, ?>> loader) {
+        this.name = name;
+        this.loader = loader;
+        this.properties = load(loader);
+    }
+
+    /**
+     * Snapshot of {@link System#getProperties()}.
+     */
+    public static PropertySource systemProperties() {
+        return new PropertySource(SYSTEM_PROPERTIES,
+                () -> new HashMap<>(System.getProperties()));
+    }
+
+    /**
+     * Snapshot of {@link System#getenv()}.
+     */
+    public static PropertySource systemEnvironment() {
+        return new PropertySource(SYSTEM_ENVIRONMENT, System::getenv);
+    }
+
+    /**
+     * Properties loaded by {@link ResourceHelper#loadProperties(String)}.
+     */
+    public static PropertySource resource(String name) {
+        return new PropertySource(name,
+                () -> ResourceHelper.loadProperties(name));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Object getProperty(String key) {
+        return properties.get(key);
+    }
+
+    public Set<?> getKeys() {
+        return properties.keySet();
+    }
+
+    public Map<?, ?> getProperties() {
+        return Collections.unmodifiableMap(properties);
+    }
+
+    /**
+     * @return true if the properties can be reloaded by the loader
+     */
+    public boolean isReloadable() {
+        return loader != null;
+    }
+
+    /**
+     * Reload the properties by the loader.
+     * @return the properties before reloading
+     */
+    Map<?, ?> reload() {
+        Map<?, ?> old = properties;
+        if (loader != null) {
+            properties = load(loader);
+        }
+        return old;
+    }
+
+    /**
+     * Replace the properties.
+     * @return the properties before replacing
+     */
+    Map<?, ?> replace(Map<?, ?> properties) {
+        Map<?, ?> old = this.properties;
+        this.properties = properties == null ? Collections.emptyMap()
+                : properties;
+        return old;
+    }
+
+    private static Map<?, ?> load(Supplier<? extends Map<?, ?>> loader) {
+        Map<?, ?> loaded = loader.get();
+        return loaded == null ? Collections.emptyMap() : loaded;
+    }
+
+    @Override
+    public String toString() {
+        return "PropertySource[" + name + "]";
+    }
+
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.expression;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * An ordered chain of {@link PropertySource}, the former source takes
+ * precedence over the latter.
+ * <p>
+ * The source which supplies each key is memoized, a lookup doesn't need a
+ * merged copy of all the sources. Reloading, adding or removing a source only
+ * invalidates the keys of that source.
+ */
+public class PropertySources {
+
+    private static final Located MISSING = new Located(null, null);
+
+    private final List<PropertySource> sources = new CopyOnWriteArrayList<>();
+
+    private final Map<String, Located> cache = new ConcurrentHashMap<>(256);
+
+    private final AtomicLong version = new AtomicLong();
+
+    public PropertySources() {
+    }
+
+    public PropertySources(PropertySource... sources) {
+        for (PropertySource source : sources) {
+            addLast(source);
+        }
+    }
+
+    /**
+     * Add {@code source} with the highest precedence.
+     */
+    public synchronized PropertySources addFirst(PropertySource source) {
+        PropertySource replaced = removeIfPresent(source.getName());
+        sources.add(0, source);
+        invalidateAdded(source, replaced);
+        return this;
+    }
+
+    /**
+     * Add {@code source} with the lowest precedence.
+     */
+    public synchronized PropertySources addLast(PropertySource source) {
+        PropertySource replaced = removeIfPresent(source.getName());
+        sources.add(source);
+        invalidateAdded(source, replaced);
+        return this;
+    }
+
+    public synchronized PropertySource remove(String name) {
+        PropertySource source = removeIfPresent(name);
+        if (source != null) {
+            invalidate(source.getKeys());
+        }
+        return source;
+    }
+
+    public PropertySource get(String name) {
+        for (PropertySource source : sources) {
+            if (source.getName().equals(name)) {
+                return source;
+            }
+        }
+        return null;
+    }
+
+    public List<PropertySource> getSources() {
+        return new ArrayList<>(sources);
+    }
+
+    /**
+     * Reload the source named {@code name} by its loader, only the keys of
+     * the source before and after reloading will be invalidated.
+     * @return false if there is no such source
+     */
+    public synchronized boolean reload(String name) {
+        PropertySource source = get(name);
+        if (source == null) {
+            return false;
+        }
+        Map<?, ?> old = source.reload();
+        invalidate(old.keySet(), source.getKeys());
+        return true;
+    }
+
+    /**
+     * Replace the properties of the source named {@code name}.
+     * @return false if there is no such source
+     */
+    public synchronized boolean replace(String name,
+            Map<?, ?> properties) {
+        PropertySource source = get(name);
+        if (source == null) {
+            return false;
+        }
+        Map<?, ?> old = source.replace(properties);
+        invalidate(old.keySet(), source.getKeys());
+        return true;
+    }
+
+    /**
+     * Get the value of {@code key} from the first source which contains it.
+     */
+    public Object getProperty(String key) {
+        return locate(key).value;
+    }
+
+    /**
+     * Get the source which supplies the value of {@code key}.
+     */
+    public PropertySource getPropertySource(String key) {
+        return locate(key).source;
+    }
+
+    public boolean containsProperty(String key) {
+        return locate(key) != MISSING;
+    }
+
+    /**
+     * Invalidate all the memoized keys.
+     */
+    public void invalidate() {
+        version.incrementAndGet();
+        cache.clear();
+    }
+
+    private Located locate(String key) {
+        if (key == null) {
+            return MISSING;
+        }
+        Located located = cache.get(key);
+        if (located != null) {
+            return located;
+        }
+        long current = version.get();
+        located = MISSING;
+        for (PropertySource source : sources) {
+            Object value = source.getProperty(key);
+            if (value != null) {
+                located = new Located(source, value);
+                break;
+            }
+        }
+        Located previous = cache.putIfAbsent(key, located);
+        if (previous != null) {
+            return previous;
+        }
+        if (version.get() != current) {
+            // Invalidated while locating,don't keep the stale one.
+            cache.remove(key, located);
+        }
+        return located;
+    }
+
+    private PropertySource removeIfPresent(String name) {
+        PropertySource source = get(name);
+        if (source != null) {
+            sources.remove(source);
+        }
+        return source;
+    }
+
+    /**
+     * Invalidate the keys of the added source and the same-named source it
+     * replaced.
+     */
+    private void invalidateAdded(PropertySource source,
+            PropertySource replaced) {
+        if (replaced == null) {
+            invalidate(source.getKeys());
+        } else {
+            invalidate(source.getKeys(), replaced.getKeys());
+        }
+    }
+
+    private void invalidate(Collection<?>... keySets) {
+        Set<Object> keys = new HashSet<>();
+        for (Collection<?> keySet : keySets) {
+            keys.addAll(keySet);
+        }
+        version.incrementAndGet();
+        for (Object key : keys) {
+            if (key != null) {
+                cache.remove(key.toString());
+            }
+        }
+    }
+
+    private static class Located {
+
+        private final PropertySource source;
+
+        private final Object value;
+
+        private Located(PropertySource source, Object value) {
+            this.source = source;
+            this.value = value;
+        }
+
+    }
+
+}
@@ -83,6 +83,8 @@ public final class MathExpressionHelper {
     private static final String EXPRESSION_FINDER =
             "([\\d\\+\\-\\*\\/\\^\\=\\!\\)\\(%><\\|\\&]+)([^\\d\\+\\-\\*\\/\\^\\=\\!\\)\\(%><\\|\\&]*)";
 
+    private static final String EXPRESSION_CHARS = "+-*/^=!)(%><|&";
+
     public static MathExpressionContext context = new MathExpressionContext();
 
     /**
@@ -110,10 +112,23 @@ public final class MathExpressionHelper {
             throw new IllegalArgumentException(
                     "Invalid parameter " + expression);
         }
+        return parseExpression(expression, 0, expression.length());
+    }
+
+    /**
+     * parse math expression between {@code start} (inclusive) and {@code end}
+     * (exclusive) of {@code expression}, without copying it.
+     */
+    public static String parseExpression(CharSequence expression, int start,
+            int end) {
+        if (expression == null || start >= end) {
+            throw new IllegalArgumentException(
+                    "Invalid parameter " + expression);
+        }
         try {
             Node node = null, prev = null;
             StringBuffer skipped = new StringBuffer();
-            for (int i = 0; i < expression.length(); i++) {
+            for (int i = start; i < end; i++) {
                 char c = expression.charAt(i);
                 if (skipped.length() > 0) {
                     skipped.append(c);
@@ -136,12 +151,20 @@ public final class MathExpressionHelper {
             }
             return result;
         } catch (Exception e) {
-            throw new SimpleHelperException(
-                    "Parsing error in math expression " + expression, e);
+            throw new SimpleHelperException("Parsing error in math expression "
+                    + expression.subSequence(start, end), e);
         }
 
     }
 
+    /**
+     * @return true if {@code c} can be a part of math expression found by
+     *         {@link #parseComplexExpression(String)}.
+     */
+    public static boolean isExpressionChar(char c) {
+        return (c >= '0' && c <= '9') || EXPRESSION_CHARS.indexOf(c) >= 0;
+    }
+
     public static MathExpressionContext getContext() {
         return context;
     }
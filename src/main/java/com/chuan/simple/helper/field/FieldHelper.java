@@ -147,6 +147,8 @@ public final class FieldHelper {
         desc = desc.replaceAll("[\\(\\)]", "\\$");
         desc = desc.replaceAll(";", "_");
         desc = desc.replaceAll("/", "");
+        // '[' is not allowed in field name, escaped like JNI
+        desc = desc.replace("[", "_3");
         return methodName + desc;
     }
     
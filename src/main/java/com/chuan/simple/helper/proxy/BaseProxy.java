@@ -15,16 +15,33 @@
  */
 package com.chuan.simple.helper.proxy;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Executable;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
-import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -32,15 +49,20 @@ import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.InitCodeholder;
+import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 
 import com.chuan.simple.helper.clazz.BuilderNameHelper;
 import com.chuan.simple.helper.clazz.ClassHelper;
+import com.chuan.simple.helper.common.ObjectHelper;
 import com.chuan.simple.helper.common.StringHelper;
+import com.chuan.simple.helper.exception.SimpleProxyException;
 import com.chuan.simple.helper.field.FieldHelper;
 import com.chuan.simple.helper.method.MethodHelper;
+import com.chuan.simple.helper.method.ParameterHelper;
+import com.chuan.simple.helper.resource.StreamHelper;
 
 /**
  * Create proxy class by java bytecode technology.
@@ -49,7 +71,6 @@ public class BaseProxy {
 
     private static final Log LOG = LogFactory.getLog(BaseProxy.class);
 
-    private static final Method classLoaderDefineClassMethod;
     private static final ClassLoader defaultClassLoader =
             ClassHelper.getDefaultClassLoader();
     public static final String LINK_STR = "$$";
@@ -61,29 +82,68 @@ public class BaseProxy {
     public static final String PROXY_CONSTRUCTOR_NAME =
             CONSTRUCTOR_PRETTY_NAME + PROXY_SUFFIX;
     public static final String METHOD_TEMPLATE_INVOKE = "invoke$TEMPLATE";
+    /** The method fields are filled by the generated static initializer. */
+    @Deprecated
     public static final String METHOD_TEMPLATE_INIT = "init$TEMPLATE";
     public static final String WRAPPER_TARGET = "TARGET";
+    public static final String HANDLER_FIELD = "handler$TEMPLATE";
+    public static final String CLASS_HANDLER_FIELD =
+            "invocationHandler$TEMPLATE";
     public static final String VOID_METHOD_NAME = "()V";
+    public static final String DISPATCHER_SUFFIX = "Dispatcher";
+    /** Signatures of the methods redirected without boxing. */
+    public static final List<String> PRIMITIVE_SIGNATURES = Collections
+            .unmodifiableList(Arrays.asList("()J", "()D", "()I", "(J)V",
+                    "(D)V", "(I)V"));
+
+    /**
+     * Generated classes by the class loader which defines them, both the
+     * class loaders and the classes are weakly referenced.
+     */
+    private static final Map<ClassLoader, Map<ProxyKey, Reference<Class<?>>>>
+            classCaches = new WeakHashMap<>();
+
+    /** Bytecode of the templates, read once from the class path. */
+    private static final Map<Class<?>, byte[]> templateBytes =
+            new ConcurrentHashMap<>(4);
+
+    /**
+     * Locks of the keys whose classes are being generated. A lock is removed
+     * by its holder once the attempt finishes, the threads waiting on a
+     * removed lock move to the current lock of the key, such that only one
+     * thread generates the class of a key at a time.
+     */
+    private static final Map<ProxyKey, Object> generatingLocks =
+            new ConcurrentHashMap<>();
+    private ClassLoader classLoader = defaultClassLoader;
 
+    private volatile ProxyClassCache classFileCache;
+
+    private volatile ClassDefiner classDefiner = ClassDefiners.getDefault();
+
+    /**
+     * The classes got by
+     * {@link WrapProxy#wrapClass(Class, Object, InvocationHandler)} by the
+     * names of {@link #generateClassName(Class, Object...)}.
+     * @deprecated the other generated classes are cached by {@link ProxyKey}
+     *             for each class loader
+     */
+    @Deprecated
     protected static final Map<String, Class<?>> classCache =
             new ConcurrentHashMap<>(256);
-    private ClassLoader classLoader = defaultClassLoader;
-    static {
-        Method classLoaderDefineClass = null;
-        try {
-            classLoaderDefineClass = ClassLoader.class.getDeclaredMethod(
-                    "defineClass", String.class, byte[].class, Integer.TYPE,
-                    Integer.TYPE, ProtectionDomain.class);
-            classLoaderDefineClass.setAccessible(true);
-        } catch (Throwable t) {
-            LOG.error("Proxy initialize failed", t);
-        }
-        classLoaderDefineClassMethod = classLoaderDefineClass;
-    }
 
+    /** The generated classes of {@link #classLoader}. */
+    private volatile Map<ProxyKey, Reference<Class<?>>> loaderClassCache;
     protected BaseProxy() {
     }
 
+    /**
+     * Generate the name of the class bound to {@code entrys} by their hash
+     * codes.
+     * @deprecated the class name is derived from {@link ProxyKey}, see
+     *             {@link ProxyKey#getClassName()}
+     */
+    @Deprecated
     protected String generateClassName(Class<?> clazz, Object... entrys) {
         StringBuilder identityCode = new StringBuilder();
         for (Object entry : entrys) {
@@ -108,7 +168,45 @@ public class BaseProxy {
 
     protected void proxyMethods(ClassWriter writer, Class<?> target,
             String className) {
+        proxyMethods(writer, getProxiableMethods(target), className);
+    }
+
+    /**
+     * Get the methods declared by {@code target} which can be proxied, the
+     * abstract and native methods are excluded.
+     */
+    protected Method[] getProxiableMethods(Class<?> target) {
+        List<Method> methods = new ArrayList<>();
         for (Method method : MethodHelper.getMethods(target, false)) {
+            if (!Modifier.isAbstract(method.getModifiers())
+                    && !Modifier.isNative(method.getModifiers())) {
+                methods.add(method);
+            }
+        }
+        return methods.toArray(new Method[methods.size()]);
+    }
+
+    /**
+     * Get the methods of {@code methods} accepted by {@code selector}.
+     */
+    protected static Method[] selectMethods(Method[] methods,
+            Predicate<Method> selector) {
+        List<Method> selected = new ArrayList<>(methods.length);
+        for (Method method : methods) {
+            if (selector.test(method)) {
+                selected.add(method);
+            }
+        }
+        return selected.toArray(new Method[selected.size()]);
+    }
+
+    /**
+     * Redirect {@code methods} declared by the proxied class to the handler,
+     * their originals are renamed by {@link ProxyMethodFilter}.
+     */
+    protected void proxyMethods(ClassWriter writer, Method[] methods,
+            String className) {
+        for (Method method : methods) {
             if (Modifier.isAbstract(method.getModifiers())
                     || Modifier.isNative(method.getModifiers())) {
                 continue;
@@ -133,7 +231,7 @@ public class BaseProxy {
             int size =
                     Type.getType(constructor).getArgumentsAndReturnSizes() >> 2;
             InitCodeholder initCodeholder = initCodeMap.get(descriptor);
-            int maxStack = Math.max(initCodeholder.getMaxStack(), 4);
+            int maxStack = Math.max(initCodeholder.getMaxStack(), 5);
             int maxLocals = Math.max(initCodeholder.getMaxLocals(), size + 3);
             methodVisitor.visitMaxs(maxStack, maxLocals);
             for (Function<MethodVisitor, Object> code : initCodeholder
@@ -141,11 +239,73 @@ public class BaseProxy {
                 code.apply(methodVisitor);
             }
             createOriginalMethodField(writer, constructor);
-            proxyExecutable(constructor, methodVisitor, className, size, null);
+            proxyExecutable(constructor, methodVisitor, className, size, null,
+                    -1);
             methodVisitor.visitInsn(Opcodes.RETURN);
         }
     }
 
+    /**
+     * Create a constructor which takes the parameters {@code parameterTypes}
+     * and an {@link InvocationHandler} in the end. The handler is stored in
+     * the instance field {@link #HANDLER_FIELD} and then the constructor with
+     * {@code parameterTypes} is invoked.
+     */
+    protected void createHandlerConstructor(ClassWriter writer,
+            String className, Class<?>[] parameterTypes) {
+        Type[] argumentTypes = new Type[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            argumentTypes[i] = Type.getType(parameterTypes[i]);
+        }
+        String descriptor = Type.getMethodDescriptor(Type.VOID_TYPE,
+                argumentTypes);
+        Type[] handlerArgumentTypes =
+                Arrays.copyOf(argumentTypes, argumentTypes.length + 1);
+        handlerArgumentTypes[argumentTypes.length] =
+                Type.getType(InvocationHandler.class);
+        MethodVisitor methodVisitor = writer.visitMethod(Opcodes.ACC_PUBLIC,
+                CONSTRUCTOR_NAME,
+                Type.getMethodDescriptor(Type.VOID_TYPE, handlerArgumentTypes),
+                null, StringHelper.ARRAY_EMPTY);
+        int size = Type.getArgumentsAndReturnSizes(descriptor) >> 2;
+        methodVisitor.visitMaxs(Math.max(size, 2), size + 1);
+        methodVisitor.visitVarInsn(Opcodes.ALOAD, 0);
+        methodVisitor.visitVarInsn(Opcodes.ALOAD, size);
+        methodVisitor.visitFieldInsn(Opcodes.PUTFIELD, className,
+                HANDLER_FIELD, Type.getDescriptor(InvocationHandler.class));
+        methodVisitor.visitVarInsn(Opcodes.ALOAD, 0);
+        for (int i = 0, slot = 1; i < argumentTypes.length; i++) {
+            methodVisitor.visitVarInsn(
+                    argumentTypes[i].getOpcode(Opcodes.ILOAD), slot);
+            slot += argumentTypes[i].getSize();
+        }
+        methodVisitor.visitMethodInsn(Opcodes.INVOKESPECIAL, className,
+                CONSTRUCTOR_NAME, descriptor, false);
+        methodVisitor.visitInsn(Opcodes.RETURN);
+        methodVisitor.visitEnd();
+    }
+
+    /**
+     * Set the static field {@link #WRAPPER_TARGET} of {@code clazz} got by
+     * {@link WrapProxy#wrapClass(Class, Object, InvocationHandler)}, the
+     * instances created later wrap {@code target}.
+     * @deprecated the shared classes of {@link WrapProxy} hold the target in
+     *             each instance, which is passed to the constructor
+     */
+    @Deprecated
+    public void setTarget(Class<?> clazz, Object target) {
+        try {
+            Field field = clazz.getDeclaredField(WRAPPER_TARGET);
+            if (!Modifier.isStatic(field.getModifiers())) {
+                throw new SimpleProxyException(
+                        "Class " + clazz + " is not bound to a target");
+            }
+            FieldHelper.setFieldValue(null, field, target);
+        } catch (Exception e) {
+            LOG.error("Set wrapper target failed", e);
+        }
+    }
+
     public void setHandler(Class<?> clazz, InvocationHandler invoker) {
         try {
             if (invoker == null) {
@@ -160,15 +320,6 @@ public class BaseProxy {
         }
     }
 
-    public void setTarget(Class<?> clazz, Object target) {
-        try {
-            Field field = clazz.getDeclaredField(WRAPPER_TARGET);
-            FieldHelper.setFieldValue(null, field, target);
-        } catch (Exception e) {
-            LOG.error("Set wrapper target failed", e);
-        }
-    }
-
     protected String[] getExceptionsDesc(Executable method) {
         Class<?>[] classes = method.getExceptionTypes();
         String[] descriptors = new String[classes.length];
@@ -214,18 +365,26 @@ public class BaseProxy {
         visitSource(writer);
     }
 
+    /**
+     * Create the static initializer which fills the method fields created
+     * by {@link #createOriginalMethodField} with the methods found by
+     * {@link #findProxyMethods(Class, String[])}, then invokes the renamed
+     * static initializer of the proxied class if {@code hasClinit}.
+     */
     private void createClinitMethod(ClassWriter writer, String className,
             boolean hasClinit) {
         MethodVisitor clinit =
                 writer.visitMethod(Opcodes.ACC_STATIC, STATIC_ANONYMOUS_NAME,
                         VOID_METHOD_NAME, null, StringHelper.ARRAY_EMPTY);
-        clinit.visitMaxs(1, 1);
+        clinit.visitMaxs(5, 1);
         clinit.visitInsn(Opcodes.ACONST_NULL);
         clinit.visitFieldInsn(Opcodes.PUTSTATIC, className,
-                "invocationHandler$TEMPLATE",
+                CLASS_HANDLER_FIELD,
                 Type.getDescriptor(InvocationHandler.class));
-        clinit.visitMethodInsn(Opcodes.INVOKESTATIC, className,
-                METHOD_TEMPLATE_INIT, VOID_METHOD_NAME, false);
+        if (writer instanceof ProxyClassWriter) {
+            initMethodFields(clinit, className,
+                    ((ProxyClassWriter) writer).getMethodFields());
+        }
         if (hasClinit) {
             clinit.visitMethodInsn(Opcodes.INVOKESTATIC, className,
                     STATIC_ANONYMOUS_PRETTY_NAME, VOID_METHOD_NAME, false);
@@ -233,6 +392,106 @@ public class BaseProxy {
         clinit.visitInsn(Opcodes.RETURN);
     }
 
+    private void initMethodFields(MethodVisitor clinit, String className,
+            Map<String, String> methodFields) {
+        if (methodFields.isEmpty()) {
+            return;
+        }
+        clinit.visitLdcInsn(Type.getObjectType(className));
+        pushInt(clinit, methodFields.size());
+        clinit.visitTypeInsn(Opcodes.ANEWARRAY,
+                Type.getInternalName(String.class));
+        int index = 0;
+        for (String method : methodFields.values()) {
+            clinit.visitInsn(Opcodes.DUP);
+            pushInt(clinit, index++);
+            clinit.visitLdcInsn(method);
+            clinit.visitInsn(Opcodes.AASTORE);
+        }
+        clinit.visitMethodInsn(Opcodes.INVOKESTATIC,
+                Type.getInternalName(BaseProxy.class), "findProxyMethods",
+                "(Ljava/lang/Class;[Ljava/lang/String;)"
+                        + "[Ljava/lang/reflect/Method;",
+                false);
+        clinit.visitVarInsn(Opcodes.ASTORE, 0);
+        index = 0;
+        for (String field : methodFields.keySet()) {
+            clinit.visitVarInsn(Opcodes.ALOAD, 0);
+            pushInt(clinit, index++);
+            clinit.visitInsn(Opcodes.AALOAD);
+            clinit.visitFieldInsn(Opcodes.PUTSTATIC, className, field,
+                    Type.getDescriptor(Method.class));
+        }
+    }
+
+    /**
+     * Find the methods declared by {@code proxyClass} by name and descriptor
+     * like {@code get$ORIGINAL()I}, which is invoked by the generated static
+     * initializer of proxy class. A method without original, such as the
+     * method of interface, is found as the abstract method it implements.
+     * @return the methods in the order of {@code methods}, null for the
+     *         methods not found
+     */
+    public static Method[] findProxyMethods(Class<?> proxyClass,
+            String[] methods) {
+        Method[] declaredMethods = proxyClass.getDeclaredMethods();
+        Map<String, Method> methodMap = new HashMap<>(
+                declaredMethods.length * 2);
+        for (Method method : declaredMethods) {
+            if (method.getName().endsWith(PROXY_SUFFIX)) {
+                methodMap.put(method.getName()
+                        + Type.getMethodDescriptor(method), method);
+            }
+        }
+        Method[] result = new Method[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            result[i] = methodMap.get(methods[i]);
+            int index = methods[i].indexOf('(');
+            String name = methods[i].substring(0, index);
+            if (result[i] == null && name.endsWith(PROXY_SUFFIX)) {
+                result[i] = findAbstractMethod(proxyClass,
+                        name.substring(0,
+                                name.length() - PROXY_SUFFIX.length()),
+                        methods[i].substring(index));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find the abstract method in the super classes and the interfaces of
+     * {@code type}.
+     */
+    private static Method findAbstractMethod(Class<?> type, String name,
+            String descriptor) {
+        List<Class<?>> types = new ArrayList<>();
+        types.add(type);
+        for (int i = 0; i < types.size(); i++) {
+            Class<?> clazz = types.get(i);
+            if (i > 0) {
+                for (Method method : clazz.getDeclaredMethods()) {
+                    if (Modifier.isAbstract(method.getModifiers())
+                            && name.equals(method.getName())
+                            && descriptor.equals(
+                                    Type.getMethodDescriptor(method))) {
+                        return method;
+                    }
+                }
+            }
+            List<Class<?>> supers = new ArrayList<>(
+                    Arrays.asList(clazz.getInterfaces()));
+            if (clazz.getSuperclass() != null) {
+                supers.add(0, clazz.getSuperclass());
+            }
+            for (Class<?> superType : supers) {
+                if (!types.contains(superType)) {
+                    types.add(superType);
+                }
+            }
+        }
+        return null;
+    }
+
     protected void visitSource(ClassWriter writer) {
         writer.visitSource("generated", null);
     }
@@ -244,17 +503,105 @@ public class BaseProxy {
     protected void proxyMethod(ClassWriter writer, Method method,
             MethodVisitor methodVisitor, String className) {
         int size = Type.getType(method).getArgumentsAndReturnSizes() >> 2;
-        methodVisitor.visitMaxs(4, size + 3);
+        methodVisitor.visitMaxs(Math.max(size, 6), size + 3);
         createOriginalMethodField(writer, method);
-        proxyExecutable(method, methodVisitor, className, size, null);
-        methodCastReturn(method, methodVisitor);
+        proxyMethodBody(method, methodVisitor, className, size, null,
+                dispatchIndex(writer, method, null));
+    }
+
+    /**
+     * Generate the code of proxy method, the original is invoked directly if
+     * there is no handler. The methods of
+     * {@link #PRIMITIVE_SIGNATURES} are redirected to the handler without
+     * boxing if they are dispatched, others are redirected by
+     * {@link #proxyExecutable}.
+     */
+    protected void proxyMethodBody(Method method, MethodVisitor methodVisitor,
+            String className, int size, Object instance, int index) {
+        if (hasOriginal(method, instance)) {
+            invokeIfUnhandled(method, methodVisitor, className, instance);
+        }
+        if (index >= 0 && isPrimitiveSignature(method)) {
+            primitiveTemplateInvoke(method, methodVisitor, className,
+                    instance, index);
+        } else {
+            proxyExecutable(method, methodVisitor, className, size, instance,
+                    index);
+            methodCastReturn(method, methodVisitor);
+        }
+    }
+
+    /**
+     * Redirect {@code method} to the specialized template method like
+     * {@code invokeLong$TEMPLATE} and return the result.
+     */
+    private void primitiveTemplateInvoke(Method method,
+            MethodVisitor methodVisitor, String className, Object instance,
+            int index) {
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+        Type type = Type.getType(method);
+        Type[] argumentTypes = type.getArgumentTypes();
+        loadHandler(methodVisitor, isStatic, className);
+        aloadOwner(methodVisitor, isStatic, instance, className);
+        getMethod(method, methodVisitor, className);
+        pushInt(methodVisitor, index);
+        String argumentsDesc = "";
+        if (argumentTypes.length > 0) {
+            methodVisitor.visitVarInsn(argumentTypes[0].getOpcode(
+                    Opcodes.ILOAD), isStatic ? 0 : 1);
+            argumentsDesc = argumentTypes[0].getDescriptor();
+        }
+        methodVisitor.visitMethodInsn(Opcodes.INVOKESTATIC, className,
+                "invoke" + getPrimitiveSuffix(method) + "$TEMPLATE",
+                "(Ljava/lang/reflect/InvocationHandler;Ljava/lang/Object;"
+                        + "Ljava/lang/reflect/Method;I" + argumentsDesc + ")"
+                        + type.getReturnType().getDescriptor(),
+                false);
+        methodReturn(method, methodVisitor);
+        methodVisitor.visitEnd();
+    }
+
+    protected boolean isPrimitiveSignature(Method method) {
+        return PRIMITIVE_SIGNATURES.contains(Type.getMethodDescriptor(method));
+    }
+
+    /**
+     * Get the suffix of the specialized methods like {@code invokeLong} by
+     * the return type, {@code Void} for the setters.
+     */
+    private String getPrimitiveSuffix(Method method) {
+        switch (Type.getReturnType(method).getSort()) {
+        case Type.LONG:
+            return "Long";
+        case Type.DOUBLE:
+            return "Double";
+        case Type.INT:
+            return "Int";
+        default:
+            return "Void";
+        }
     }
 
+    /**
+     * Create the field of the original of {@code executable}, which is
+     * filled by the static initializer if the original exists.
+     */
     protected void createOriginalMethodField(ClassWriter writer,
             Executable executable) {
+        String fieldName = getOriginalMethodFieldName(executable);
         writer.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC,
-                getOriginalMethodFieldName(executable),
-                Type.getDescriptor(Method.class), null, null);
+                fieldName, Type.getDescriptor(Method.class), null, null);
+        if (writer instanceof ProxyClassWriter) {
+            String name = executable instanceof Constructor
+                    ? CONSTRUCTOR_PRETTY_NAME + PROXY_SUFFIX
+                    : executable.getName() + PROXY_SUFFIX;
+            String descriptor = executable instanceof Constructor
+                    ? Type.getConstructorDescriptor(
+                            (Constructor<?>) executable)
+                    : Type.getMethodDescriptor((Method) executable);
+            ((ProxyClassWriter) writer).addMethodField(fieldName,
+                    name + descriptor);
+        }
     }
 
     protected void methodCastReturn(Method method,
@@ -301,31 +648,195 @@ public class BaseProxy {
         }
     }
 
+    /**
+     * Redirect {@code executable} to the handler.
+     * @param index
+     *            the index of {@code executable} in the dispatcher, -1 if it
+     *            is not dispatched
+     */
     protected void proxyExecutable(Executable executable,
             MethodVisitor methodVisitor, String className, int size,
-            Object instance) {
-        Class<?>[] parameterTypes = executable.getParameterTypes();
+            Object instance, int index) {
         int count = executable.getParameterCount();
         boolean isStatic = Modifier.isStatic(executable.getModifiers());
         int thiz = isStatic ? -1 : 0;
-        if (count == 1 && parameterTypes[0].isArray()
-                && !parameterTypes[0].getComponentType().isPrimitive()) {
-            methodVisitor.visitVarInsn(Opcodes.ALOAD, thiz + 1);
-            getMethod(executable, methodVisitor, className);
-            methodVisitor.visitVarInsn(Opcodes.ASTORE, thiz + 2);
-            aloadOwner(methodVisitor, isStatic, instance, className);
-            methodVisitor.visitVarInsn(Opcodes.ALOAD, thiz + 2);
-            methodVisitor.visitVarInsn(Opcodes.ALOAD, thiz + 1);
-            templateInvoke(methodVisitor, className);
+        newArray(executable, methodVisitor, count, size, thiz);
+        getMethod(executable, methodVisitor, className);
+        methodVisitor.visitVarInsn(Opcodes.ASTORE, size + 2);
+        loadHandler(methodVisitor, isStatic, className);
+        aloadOwner(methodVisitor, isStatic, instance, className);
+        methodVisitor.visitVarInsn(Opcodes.ALOAD, size + 2);
+        pushInt(methodVisitor, index);
+        methodVisitor.visitVarInsn(Opcodes.ALOAD, size + 1);
+        templateInvoke(methodVisitor, className);
+    }
+
+    /**
+     * Invoke the original method directly if there is neither handler of the
+     * instance nor handler of the class, the arguments are passed without
+     * boxing and reflection. The handled invocation starts at the end of the
+     * code, which is the first frame of the method.
+     */
+    private void invokeIfUnhandled(Method method, MethodVisitor methodVisitor,
+            String className, Object instance) {
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+        String handlerDesc = Type.getDescriptor(InvocationHandler.class);
+        Label handled = new Label();
+        if (!isStatic) {
+            methodVisitor.visitVarInsn(Opcodes.ALOAD, 0);
+            methodVisitor.visitFieldInsn(Opcodes.GETFIELD, className,
+                    HANDLER_FIELD, handlerDesc);
+            methodVisitor.visitJumpInsn(Opcodes.IFNONNULL, handled);
+        }
+        methodVisitor.visitFieldInsn(Opcodes.GETSTATIC, className,
+                CLASS_HANDLER_FIELD, handlerDesc);
+        methodVisitor.visitJumpInsn(Opcodes.IFNONNULL, handled);
+        invokeOriginal(method, methodVisitor, className, instance);
+        methodReturn(method, methodVisitor);
+        methodVisitor.visitLabel(handled);
+        methodVisitor.visitFrame(Opcodes.F_SAME, 0, null, 0, null);
+    }
+
+    /**
+     * Whether the original of {@code method} can be invoked by
+     * {@link #invokeOriginal}, the original of proxy class is the method
+     * renamed with {@link #PROXY_SUFFIX}.
+     */
+    protected boolean hasOriginal(Method method, Object instance) {
+        return !Modifier.isAbstract(method.getModifiers())
+                && !Modifier.isNative(method.getModifiers());
+    }
+
+    /**
+     * Invoke the original of {@code method} with the arguments of current
+     * method, the result is left on the stack.
+     */
+    protected void invokeOriginal(Method method, MethodVisitor methodVisitor,
+            String className, Object instance) {
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+        if (!isStatic) {
+            methodVisitor.visitVarInsn(Opcodes.ALOAD, 0);
+        }
+        loadArguments(method, methodVisitor, isStatic ? 0 : 1);
+        methodVisitor.visitMethodInsn(
+                isStatic ? Opcodes.INVOKESTATIC : Opcodes.INVOKEVIRTUAL,
+                className, method.getName() + PROXY_SUFFIX,
+                Type.getMethodDescriptor(method), false);
+    }
+
+    /**
+     * Invoke the original of {@code method} in the dispatcher, the target is
+     * the local variable 2 and the arguments start from local variable 3, the
+     * result is left on the stack.
+     * @param boxed
+     *            whether the arguments are the elements of the array in local
+     *            variable 3
+     */
+    protected void dispatchOriginal(Method method, MethodVisitor methodVisitor,
+            String className, Object instance, boolean boxed) {
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+        if (!isStatic) {
+            methodVisitor.visitVarInsn(Opcodes.ALOAD, 2);
+            methodVisitor.visitTypeInsn(Opcodes.CHECKCAST, className);
+        }
+        dispatchArguments(method, methodVisitor, boxed);
+        methodVisitor.visitMethodInsn(
+                isStatic ? Opcodes.INVOKESTATIC : Opcodes.INVOKEVIRTUAL,
+                className, method.getName() + PROXY_SUFFIX,
+                Type.getMethodDescriptor(method), false);
+    }
+
+    /**
+     * Allocate the index of {@code method} if its original can be invoked by
+     * the dispatcher.
+     * @return the index, -1 if {@code method} is not dispatched
+     */
+    protected int dispatchIndex(ClassWriter writer, Method method,
+            Object instance) {
+        if (writer instanceof ProxyClassWriter
+                && hasOriginal(method, instance)) {
+            return ((ProxyClassWriter) writer).addDispatchedMethod(method);
+        }
+        return -1;
+    }
+
+    protected void dispatchArguments(Method method,
+            MethodVisitor methodVisitor, boolean boxed) {
+        if (boxed) {
+            unboxArguments(method, methodVisitor, 3);
         } else {
-            newArray(executable, methodVisitor, count, size, thiz);
-            methodVisitor.visitVarInsn(Opcodes.ALOAD, size + 1);
-            getMethod(executable, methodVisitor, className);
-            methodVisitor.visitVarInsn(Opcodes.ASTORE, size + 2);
-            aloadOwner(methodVisitor, isStatic, instance, className);
-            methodVisitor.visitVarInsn(Opcodes.ALOAD, size + 2);
-            methodVisitor.visitVarInsn(Opcodes.ALOAD, size + 1);
-            templateInvoke(methodVisitor, className);
+            loadArguments(method, methodVisitor, 3);
+        }
+    }
+
+    /**
+     * Load the elements of the array in local variable {@code slot} as the
+     * parameters of {@code method}.
+     */
+    protected void unboxArguments(Method method, MethodVisitor methodVisitor,
+            int slot) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            methodVisitor.visitVarInsn(Opcodes.ALOAD, slot);
+            pushInt(methodVisitor, i);
+            methodVisitor.visitInsn(Opcodes.AALOAD);
+            checkCast(methodVisitor, parameterTypes[i]);
+        }
+    }
+
+    /**
+     * Box the value of {@code type} on the stack, void is replaced with null.
+     */
+    protected void box(MethodVisitor methodVisitor, Class<?> type) {
+        if (type == void.class) {
+            methodVisitor.visitInsn(Opcodes.ACONST_NULL);
+        } else if (type.isPrimitive()) {
+            Class<?> wrapType = ClassHelper.resolvePrimitiveIfNecessary(type);
+            methodVisitor.visitMethodInsn(Opcodes.INVOKESTATIC,
+                    Type.getInternalName(wrapType), "valueOf",
+                    "(" + Type.getDescriptor(type) + ")"
+                            + Type.getDescriptor(wrapType),
+                    false);
+        }
+    }
+
+    protected void pushInt(MethodVisitor methodVisitor, int value) {
+        if (value >= -1 && value <= 5) {
+            methodVisitor.visitInsn(Opcodes.ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            methodVisitor.visitIntInsn(Opcodes.BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            methodVisitor.visitIntInsn(Opcodes.SIPUSH, value);
+        } else {
+            methodVisitor.visitLdcInsn(value);
+        }
+    }
+
+    /**
+     * Load the parameters of {@code method} which start from {@code slot}.
+     */
+    protected void loadArguments(Method method, MethodVisitor methodVisitor,
+            int slot) {
+        for (Class<?> type : method.getParameterTypes()) {
+            Type argumentType = Type.getType(type);
+            methodVisitor.visitVarInsn(argumentType.getOpcode(Opcodes.ILOAD),
+                    slot);
+            slot += argumentType.getSize();
+        }
+    }
+
+    /**
+     * Load the handler of the instance, static method uses the handler of
+     * class instead.
+     */
+    protected void loadHandler(MethodVisitor methodVisitor, boolean isStatic,
+            String className) {
+        if (isStatic) {
+            methodVisitor.visitInsn(Opcodes.ACONST_NULL);
+        } else {
+            methodVisitor.visitVarInsn(Opcodes.ALOAD, 0);
+            methodVisitor.visitFieldInsn(Opcodes.GETFIELD, className,
+                    HANDLER_FIELD, Type.getDescriptor(InvocationHandler.class));
         }
     }
 
@@ -365,20 +876,29 @@ public class BaseProxy {
             String className) {
         methodVisitor.visitMethodInsn(Opcodes.INVOKESTATIC, className,
                 METHOD_TEMPLATE_INVOKE,
-                "(Ljava/lang/Object;Ljava/lang/reflect/Method;[Ljava/lang/Object;)Ljava/lang/Object;",
+                "(Ljava/lang/reflect/InvocationHandler;Ljava/lang/Object;"
+                        + "Ljava/lang/reflect/Method;I[Ljava/lang/Object;)"
+                        + "Ljava/lang/Object;",
                 false);
     }
 
     protected void newArray(Executable method, MethodVisitor methodVisitor,
             int length, int size, int thiz) {
         Class<?>[] parameterTypes = method.getParameterTypes();
-        methodVisitor.visitIntInsn(Opcodes.BIPUSH, length);
+        if (length == 0) {
+            methodVisitor.visitFieldInsn(Opcodes.GETSTATIC,
+                    Type.getInternalName(ObjectHelper.class), "ARRAY_EMPTY",
+                    "[Ljava/lang/Object;");
+            methodVisitor.visitVarInsn(Opcodes.ASTORE, size + 1);
+            return;
+        }
+        pushInt(methodVisitor, length);
         methodVisitor.visitTypeInsn(Opcodes.ANEWARRAY, "java/lang/Object");
         methodVisitor.visitVarInsn(Opcodes.ASTORE, size + 1);
         for (int s = thiz + 1, i = 0; i < length; i++, s++) {
             Class<?> type = parameterTypes[i];
             methodVisitor.visitVarInsn(Opcodes.ALOAD, size + 1);
-            methodVisitor.visitIntInsn(Opcodes.BIPUSH, i);
+            pushInt(methodVisitor, i);
             if (type.isPrimitive()) {
                 Class<?> wrapType =
                         ClassHelper.resolvePrimitiveIfNecessary(type);
@@ -406,12 +926,515 @@ public class BaseProxy {
                 "([Ljava/lang/Object;)Ljava/lang/reflect/Executable;", false);
     }
 
-    protected Class<?> defineClass(String name, byte[] b, int off, int len,
-            ProtectionDomain protectionDomain) {
+    /**
+     * Create reader of {@code template} over its cached bytecode, such that
+     * generating proxy class neither reads the class path nor copies the
+     * bytecode.
+     */
+    protected static ClassReader templateReader(Class<?> template)
+            throws IOException {
+        return new ClassReader(getTemplateBytes(template));
+    }
+
+    /**
+     * Get the bytecode of {@code template}, which is read once.
+     */
+    static byte[] getTemplateBytes(Class<?> template) throws IOException {
+        byte[] bytes = templateBytes.get(template);
+        if (bytes == null) {
+            bytes = readClassBytes(template);
+            templateBytes.put(template, bytes);
+        }
+        return bytes;
+    }
+
+    /**
+     * Read the bytecode of {@code clazz} from the class path.
+     */
+    static byte[] readClassBytes(Class<?> clazz) throws IOException {
+        try (InputStream in = ClassHelper.getClassInputStream(clazz)) {
+            if (in == null) {
+                throw new IOException("Class not found " + clazz);
+            }
+            return StreamHelper.toByteArray(in);
+        }
+    }
+
+    /**
+     * <p>
+     * Get the proxy class of {@code key} from cache, or create it. The
+     * creation is single-flight per key, the threads which miss on the same
+     * key wait for the class created by the first one instead of defining it
+     * again.
+     * <p>
+     * The class pregenerated by {@link ProxyClassGenerator} or defined
+     * before is loaded by the class loader, then the class is defined from
+     * the {@link ProxyClassCache} if set, otherwise it is written by
+     * {@code generator} and defined. {@code initializer} is applied to the
+     * class in all cases.
+     */
+    protected Class<?> getProxyClass(ProxyKey key, ProxyGenerator generator,
+            Consumer<Class<?>> initializer) throws IOException {
+        Map<ProxyKey, Reference<Class<?>>> cache = getClassCache();
+        Class<?> clazz = getCachedClass(cache, key);
+        if (clazz != null) {
+            return clazz;
+        }
+        while (true) {
+            Object lock =
+                    generatingLocks.computeIfAbsent(key, k -> new Object());
+            synchronized (lock) {
+                if (generatingLocks.get(key) != lock) {
+                    // removed by the previous attempt, wait on the current
+                    continue;
+                }
+                try {
+                    return createProxyClass(cache, key, generator,
+                            initializer);
+                } finally {
+                    generatingLocks.remove(key, lock);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the proxy class of {@code key} under the lock of the key, the
+     * class is published to {@code cache} before the lock is released.
+     */
+    private Class<?> createProxyClass(
+            Map<ProxyKey, Reference<Class<?>>> cache, ProxyKey key,
+            ProxyGenerator generator, Consumer<Class<?>> initializer)
+            throws IOException {
+        Class<?> clazz = getCachedClass(cache, key);
+        if (clazz != null) {
+            return clazz;
+        }
+        String className = key.getClassName();
+        clazz = loadProxyClass(className);
+        boolean cacheable = classFileCache != null && !key.isBound();
+        if (clazz == null && cacheable) {
+            clazz = defineCachedClass(key);
+        }
+        if (clazz == null) {
+            ProxyClassWriter writer = generator.generate(className);
+            Class<?> defined = cacheable ? loadProxyClass(className) : null;
+            clazz = defined == null ? defineProxyClass(writer, key.getHost())
+                    : completeProxyClass(writer, defined);
+            if (clazz != null && cacheable) {
+                cacheClass(key, clazz, writer);
+            }
+        }
+        if (clazz != null) {
+            if (initializer != null) {
+                initializer.accept(clazz);
+            }
+            cache.put(key, new WeakReference<>(clazz));
+        }
+        return clazz;
+    }
+
+    protected Class<?> getProxyClass(ProxyShape shape) throws IOException {
+        return getProxyClass(shape.key, shape.generator, shape.initializer);
+    }
+
+    /**
+     * <p>
+     * Get the proxy classes of {@code shapes} like
+     * {@link #getProxyClass(ProxyShape)}, with their factories.
+     * <p>
+     * The classes which are neither cached nor defined before are generated
+     * in parallel on {@code pool} first, since writing bytecode is CPU-bound
+     * and independent per class. Then the classes are defined in order by
+     * the caller thread, each after its target and before its dispatcher
+     * and factory. A class refers only to its target, interfaces and
+     * delegate type, which are loaded already, and to its own dispatcher
+     * and factory, never to another proxy class, so any order of
+     * {@code shapes} is safe.
+     * @return the classes in the order of {@code shapes}, null if failed
+     */
+    static List<Class<?>> prepare(List<ProxyShape> shapes, ForkJoinPool pool) {
+        ProxyClassWriter[] writers = new ProxyClassWriter[shapes.size()];
+        try {
+            pool.submit(() -> IntStream.range(0, writers.length).parallel()
+                    .forEach(i -> writers[i] = shapes.get(i).generate()))
+                    .get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SimpleProxyException("Prepare proxy classes interrupted",
+                    e);
+        } catch (ExecutionException e) {
+            throw new SimpleProxyException("Prepare proxy classes failed",
+                    e.getCause());
+        }
+        List<Class<?>> classes = new ArrayList<>(writers.length);
+        for (int i = 0; i < writers.length; i++) {
+            ProxyShape shape = shapes.get(i);
+            ProxyClassWriter writer = writers[i];
+            ProxyGenerator generator = writer == null ? shape.generator
+                    : className -> writer;
+            Class<?> clazz = null;
+            try {
+                clazz = shape.getProxy().getProxyClass(shape.key, generator,
+                        shape.initializer);
+                if (clazz != null) {
+                    ProxyFactories.of(clazz,
+                            shape.getProxy().getClassDefiner());
+                }
+            } catch (IOException | RuntimeException | LinkageError e) {
+                LOG.error("Prepare proxy class of " + shape.key + " failed",
+                        e);
+            }
+            classes.add(clazz);
+        }
+        return classes;
+    }
+
+    /**
+     * Whether the proxy class of {@code key} needn't be generated, which is
+     * cached, defined by the class loader or in {@link #classFileCache}.
+     */
+    private boolean isGenerated(ProxyKey key) {
+        if (getCachedClass(getClassCache(), key) != null) {
+            return true;
+        }
+        try {
+            Class.forName(BuilderNameHelper.toClassName(key.getClassName()),
+                    false, classLoader);
+            return true;
+        } catch (ClassNotFoundException e) {
+            // not defined yet
+        }
+        ProxyClassCache cache = classFileCache;
+        return cache != null && !key.isBound() && cache.contains(key);
+    }
+
+    /**
+     * Define the proxy class of {@code key} and its companions from the
+     * bytecode in {@link #classFileCache}, return null if it is not cached.
+     */
+    private Class<?> defineCachedClass(ProxyKey key) {
+        Map<String, byte[]> classes = classFileCache.read(key);
+        if (classes == null) {
+            return null;
+        }
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            byte[] bytes = entry.getValue();
+            if (defineClass(key.getHost(),
+                    BuilderNameHelper.toClassName(entry.getKey()),
+                    bytes) == null) {
+                return null;
+            }
+        }
+        return loadProxyClass(key.getClassName());
+    }
+
+    /**
+     * Write the classes defined for {@code key} to {@link #classFileCache},
+     * with the factory of the proxy class.
+     */
+    private void cacheClass(ProxyKey key, Class<?> clazz,
+            ProxyClassWriter writer) {
+        Map<String, byte[]> classes =
+                new LinkedHashMap<>(writer.getDefinedClasses());
+        try {
+            byte[] factoryBytes = ProxyFactories.generateFactory(clazz);
+            if (factoryBytes != null) {
+                classes.put(ProxyFactories.getFactoryName(clazz),
+                        factoryBytes);
+            }
+        } catch (SimpleProxyException e) {
+            LOG.debug("No factory of " + clazz, e);
+        }
+        classFileCache.write(key, classes);
+    }
+
+    /**
+     * Get the cache of the classes defined by {@link #classLoader}.
+     */
+    private Map<ProxyKey, Reference<Class<?>>> getClassCache() {
+        Map<ProxyKey, Reference<Class<?>>> cache = loaderClassCache;
+        if (cache == null) {
+            synchronized (classCaches) {
+                cache = classCaches.get(classLoader);
+                if (cache == null) {
+                    cache = new ConcurrentHashMap<>(64);
+                    classCaches.put(classLoader, cache);
+                }
+            }
+            loaderClassCache = cache;
+        }
+        return cache;
+    }
+
+    private static Class<?> getCachedClass(
+            Map<ProxyKey, Reference<Class<?>>> cache, ProxyKey key) {
+        Reference<Class<?>> reference = cache.get(key);
+        return reference == null ? null : reference.get();
+    }
+
+    /**
+     * Load the proxy class named {@code className} and attach its
+     * dispatcher, return null if the class is not found.
+     */
+    protected Class<?> loadProxyClass(String className) {
+        Class<?> clazz;
+        try {
+            clazz = Class.forName(BuilderNameHelper.toClassName(className),
+                    false, classLoader);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+        try {
+            Class<?> dispatcherClass = Class.forName(
+                    BuilderNameHelper.toClassName(
+                            className + LINK_STR + DISPATCHER_SUFFIX),
+                    false, clazz.getClassLoader());
+            setDispatcher(clazz,
+                    (MethodDispatcher) dispatcherClass
+                            .getDeclaredConstructor().newInstance());
+        } catch (ClassNotFoundException e) {
+            LOG.debug("No dispatcher of " + clazz);
+        } catch (ReflectiveOperationException e) {
+            throw new SimpleProxyException(
+                    "Load dispatcher of " + clazz + " failed", e);
+        }
+        return clazz;
+    }
+
+    /**
+     * Define the proxy class written by {@code writer} and its dispatcher,
+     * the dispatcher is named like {@code Proxy$$Dispatcher}.
+     * @param host
+     *            the class in the same package as the proxy class, such as
+     *            the target class, null if there is none
+     */
+    protected Class<?> defineProxyClass(ProxyClassWriter writer,
+            Class<?> host) {
+        String className = writer.getClassName();
+        byte[] bytes = writer.toByteArray();
+        Class<?> clazz = defineClass(host,
+                BuilderNameHelper.toClassName(className), bytes);
+        if (clazz == null) {
+            return null;
+        }
+        writer.addDefinedClass(className, bytes);
+        defineDispatcher(writer, clazz);
+        return clazz;
+    }
+
+    /**
+     * Complete {@code clazz} which is defined by a broken entry of
+     * {@link #classFileCache} with the dispatcher written by {@code writer},
+     * instead of defining the class of the same name again. The classes of
+     * {@code writer} replace the entry then.
+     */
+    private Class<?> completeProxyClass(ProxyClassWriter writer,
+            Class<?> clazz) {
+        writer.addDefinedClass(writer.getClassName(), writer.toByteArray());
+        if (writer.getDispatchedMethods().isEmpty()) {
+            return clazz;
+        }
+        String dispatcherName =
+                writer.getClassName() + LINK_STR + DISPATCHER_SUFFIX;
+        try {
+            Class.forName(BuilderNameHelper.toClassName(dispatcherName), false,
+                    clazz.getClassLoader());
+            writer.addDefinedClass(dispatcherName,
+                    getDispatcherBytes(writer, dispatcherName));
+        } catch (ClassNotFoundException e) {
+            defineDispatcher(writer, clazz);
+        }
+        return clazz;
+    }
+
+    /**
+     * Define the dispatcher of {@code clazz} written by {@code writer} if
+     * there are dispatched methods.
+     */
+    private void defineDispatcher(ProxyClassWriter writer, Class<?> clazz) {
+        if (writer.getDispatchedMethods().isEmpty()) {
+            return;
+        }
+        String dispatcherName =
+                writer.getClassName() + LINK_STR + DISPATCHER_SUFFIX;
+        byte[] dispatcherBytes = getDispatcherBytes(writer, dispatcherName);
+        Class<?> dispatcherClass = defineClass(clazz,
+                BuilderNameHelper.toClassName(dispatcherName),
+                dispatcherBytes);
+        if (dispatcherClass == null) {
+            throw new SimpleProxyException(
+                    "Define dispatcher of " + clazz + " failed");
+        }
+        writer.addDefinedClass(dispatcherName, dispatcherBytes);
+        try {
+            setDispatcher(clazz,
+                    (MethodDispatcher) dispatcherClass
+                            .getDeclaredConstructor().newInstance());
+        } catch (ReflectiveOperationException e) {
+            throw new SimpleProxyException(
+                    "Create dispatcher of " + clazz + " failed", e);
+        }
+    }
+
+    private byte[] getDispatcherBytes(ProxyClassWriter writer,
+            String dispatcherName) {
+        byte[] dispatcherBytes = writer.getDispatcherBytes();
+        if (dispatcherBytes == null) {
+            dispatcherBytes = generateDispatcher(dispatcherName, writer);
+        }
+        return dispatcherBytes;
+    }
+
+    private static void setDispatcher(Class<?> clazz,
+            MethodDispatcher dispatcher) {
         try {
-            return (Class<?>) classLoaderDefineClassMethod.invoke(classLoader,
-                    name, b, off, len, protectionDomain);
+            Method method = clazz.getDeclaredMethod("setDispatcher$TEMPLATE",
+                    MethodDispatcher.class, int.class);
+            method.invoke(null, dispatcher, dispatcher.getMethodCount());
         } catch (Exception e) {
+            throw new SimpleProxyException(
+                    "Set dispatcher of " + clazz + " failed", e);
+        }
+    }
+
+    /**
+     * Generate the {@link MethodDispatcher} which invokes the dispatched
+     * methods of proxy class by a {@code tableswitch} over the index.
+     */
+    protected byte[] generateDispatcher(String dispatcherName,
+            ProxyClassWriter proxyWriter) {
+        List<Method> methods = proxyWriter.getDispatchedMethods();
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER,
+                dispatcherName, null, Type.getInternalName(Object.class),
+                new String[] { Type.getInternalName(MethodDispatcher.class) });
+        MethodVisitor constructor = writer.visitMethod(Opcodes.ACC_PUBLIC,
+                CONSTRUCTOR_NAME, VOID_METHOD_NAME, null, null);
+        constructor.visitMaxs(1, 1);
+        constructor.visitVarInsn(Opcodes.ALOAD, 0);
+        constructor.visitMethodInsn(Opcodes.INVOKESPECIAL,
+                Type.getInternalName(Object.class), CONSTRUCTOR_NAME,
+                VOID_METHOD_NAME, false);
+        constructor.visitInsn(Opcodes.RETURN);
+        constructor.visitEnd();
+        MethodVisitor methodVisitor = writer.visitMethod(Opcodes.ACC_PUBLIC,
+                "invoke",
+                "(ILjava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;",
+                null, new String[] { Type.getInternalName(Throwable.class) });
+        int maxStack = 3;
+        for (Method method : methods) {
+            int size = Type.getType(method).getArgumentsAndReturnSizes() >> 2;
+            maxStack = Math.max(maxStack, size + 2);
+        }
+        methodVisitor.visitMaxs(maxStack, 4);
+        Label defaultLabel = new Label();
+        Label[] labels = new Label[methods.size()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = new Label();
+        }
+        methodVisitor.visitVarInsn(Opcodes.ILOAD, 1);
+        methodVisitor.visitTableSwitchInsn(0, labels.length - 1, defaultLabel,
+                labels);
+        for (int i = 0; i < labels.length; i++) {
+            Method method = methods.get(i);
+            methodVisitor.visitLabel(labels[i]);
+            methodVisitor.visitFrame(Opcodes.F_SAME, 0, null, 0, null);
+            dispatchOriginal(method, methodVisitor,
+                    proxyWriter.getClassName(), proxyWriter.getInstance(),
+                    true);
+            box(methodVisitor, method.getReturnType());
+            methodVisitor.visitInsn(Opcodes.ARETURN);
+        }
+        throwNoMethod(methodVisitor, defaultLabel);
+        MethodVisitor countVisitor = writer.visitMethod(Opcodes.ACC_PUBLIC,
+                "getMethodCount", "()I", null, null);
+        countVisitor.visitMaxs(1, 1);
+        pushInt(countVisitor, methods.size());
+        countVisitor.visitInsn(Opcodes.IRETURN);
+        countVisitor.visitEnd();
+        for (String signature : PRIMITIVE_SIGNATURES) {
+            generatePrimitiveDispatch(writer, proxyWriter, signature);
+        }
+        visitSource(writer);
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    /**
+     * Generate the specialized method like {@code invokeLong} for the
+     * dispatched methods of {@code signature} by a {@code lookupswitch}.
+     */
+    private void generatePrimitiveDispatch(ClassWriter writer,
+            ProxyClassWriter proxyWriter, String signature) {
+        List<Method> methods = proxyWriter.getDispatchedMethods();
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < methods.size(); i++) {
+            if (signature.equals(Type.getMethodDescriptor(methods.get(i)))) {
+                indexes.add(i);
+            }
+        }
+        if (indexes.isEmpty()) {
+            return;
+        }
+        Method first = methods.get(indexes.get(0));
+        Type[] argumentTypes = Type.getArgumentTypes(signature);
+        Type returnType = Type.getReturnType(signature);
+        String argumentsDesc = argumentTypes.length == 0 ? ""
+                : argumentTypes[0].getDescriptor();
+        int argumentSize =
+                argumentTypes.length == 0 ? 0 : argumentTypes[0].getSize();
+        MethodVisitor methodVisitor = writer.visitMethod(Opcodes.ACC_PUBLIC,
+                "invoke" + getPrimitiveSuffix(first),
+                "(ILjava/lang/Object;" + argumentsDesc + ")"
+                        + returnType.getDescriptor(),
+                null, new String[] { Type.getInternalName(Throwable.class) });
+        methodVisitor.visitMaxs(3, 3 + argumentSize);
+        int[] keys = new int[indexes.size()];
+        Label[] labels = new Label[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = indexes.get(i);
+            labels[i] = new Label();
+        }
+        Label defaultLabel = new Label();
+        methodVisitor.visitVarInsn(Opcodes.ILOAD, 1);
+        methodVisitor.visitLookupSwitchInsn(defaultLabel, keys, labels);
+        for (int i = 0; i < keys.length; i++) {
+            methodVisitor.visitLabel(labels[i]);
+            methodVisitor.visitFrame(Opcodes.F_SAME, 0, null, 0, null);
+            dispatchOriginal(methods.get(keys[i]), methodVisitor,
+                    proxyWriter.getClassName(), proxyWriter.getInstance(),
+                    false);
+            methodVisitor.visitInsn(returnType.getOpcode(Opcodes.IRETURN));
+        }
+        throwNoMethod(methodVisitor, defaultLabel);
+    }
+
+    private void throwNoMethod(MethodVisitor methodVisitor, Label label) {
+        methodVisitor.visitLabel(label);
+        methodVisitor.visitFrame(Opcodes.F_SAME, 0, null, 0, null);
+        String exception = Type.getInternalName(IllegalArgumentException.class);
+        methodVisitor.visitTypeInsn(Opcodes.NEW, exception);
+        methodVisitor.visitInsn(Opcodes.DUP);
+        methodVisitor.visitLdcInsn("No method of the index");
+        methodVisitor.visitMethodInsn(Opcodes.INVOKESPECIAL, exception,
+                CONSTRUCTOR_NAME, "(Ljava/lang/String;)V", false);
+        methodVisitor.visitInsn(Opcodes.ATHROW);
+        methodVisitor.visitEnd();
+    }
+
+    /**
+     * Define class {@code name} by {@link #classLoader} with
+     * {@link #classDefiner}.
+     * @param host
+     *            the class in the same package as the defined class, null if
+     *            there is none
+     * @return the class, null if the definition failed
+     */
+    protected Class<?> defineClass(Class<?> host, String name, byte[] bytes) {
+        try {
+            return classDefiner.define(classLoader, host, name, bytes);
+        } catch (Exception | LinkageError e) {
             LOG.error("Define class failed", e);
         }
         return null;
@@ -423,6 +1446,95 @@ public class BaseProxy {
 
     public void setClassLoader(ClassLoader classLoader) {
         this.classLoader = classLoader;
+        this.loaderClassCache = null;
+    }
+
+    public ClassDefiner getClassDefiner() {
+        return classDefiner;
+    }
+
+    /**
+     * Set the strategy which defines the generated classes.
+     * @see ClassDefiners
+     */
+    public void setClassDefiner(ClassDefiner classDefiner) {
+        if (classDefiner == null) {
+            throw new IllegalArgumentException(
+                    "Invalid parameter " + classDefiner);
+        }
+        this.classDefiner = classDefiner;
+    }
+
+    public ProxyClassCache getClassFileCache() {
+        return classFileCache;
+    }
+
+    /**
+     * Set the on-disk cache of the generated bytecode, null to disable it.
+     */
+    public void setClassFileCache(ProxyClassCache classFileCache) {
+        this.classFileCache = classFileCache;
+    }
+
+    /**
+     * Write the proxy class named {@code className}.
+     */
+    @FunctionalInterface
+    protected interface ProxyGenerator {
+        ProxyClassWriter generate(String className) throws IOException;
+    }
+
+    /**
+     * The proxy class of {@link #key} in this proxy, which is written by
+     * {@link #generator} and applied to {@link #initializer} once loaded.
+     */
+    protected class ProxyShape {
+
+        private final ProxyKey key;
+
+        private final ProxyGenerator generator;
+
+        private final Consumer<Class<?>> initializer;
+
+        protected ProxyShape(ProxyKey key, ProxyGenerator generator,
+                Consumer<Class<?>> initializer) {
+            this.key = key;
+            this.generator = generator;
+            this.initializer = initializer;
+        }
+
+        public ProxyKey getKey() {
+            return key;
+        }
+
+        BaseProxy getProxy() {
+            return BaseProxy.this;
+        }
+
+        /**
+         * Write the completed class unless it needn't be generated, the
+         * failure is left to the definition.
+         */
+        private ProxyClassWriter generate() {
+            if (isGenerated(key)) {
+                return null;
+            }
+            try {
+                String className = key.getClassName();
+                ProxyClassWriter writer = generator.generate(className);
+                byte[] dispatcherBytes = null;
+                if (!writer.getDispatchedMethods().isEmpty()) {
+                    dispatcherBytes = generateDispatcher(
+                            className + LINK_STR + DISPATCHER_SUFFIX, writer);
+                }
+                writer.complete(dispatcherBytes);
+                return writer;
+            } catch (IOException | RuntimeException e) {
+                LOG.debug("Generate proxy class of " + key + " failed", e);
+            }
+            return null;
+        }
+
     }
 
     protected class TemplateMethodFilter extends ClassReader.MethodFilter {
@@ -448,10 +1560,27 @@ public class BaseProxy {
 
         private Map<String, InitCodeholder> initCodeMap;
 
+        /** Names and descriptors of the renamed methods, null for all. */
+        private Set<String> renamedMethods;
+
         protected ProxyMethodFilter(Map<String, InitCodeholder> initCodeMap) {
             this.initCodeMap = initCodeMap;
         }
 
+        /**
+         * Rename only the constructors and {@code methods}, the others keep
+         * their names such that they are not proxied.
+         */
+        protected ProxyMethodFilter(Map<String, InitCodeholder> initCodeMap,
+                Method[] methods) {
+            this.initCodeMap = initCodeMap;
+            this.renamedMethods = new HashSet<>();
+            for (Method method : methods) {
+                renamedMethods.add(
+                        method.getName() + Type.getMethodDescriptor(method));
+            }
+        }
+
         @Override
         public MethodVisitor visitMethod(ClassReader classReader,
                 ClassVisitor classVisitor, int access, String name,
@@ -460,7 +1589,8 @@ public class BaseProxy {
                 name = STATIC_ANONYMOUS_PRETTY_NAME;
                 hasClinit = true;
             } else if (!Modifier.isNative(access)
-                    && !Modifier.isAbstract(access)) {
+                    && !Modifier.isAbstract(access)
+                    && isRenamed(name, descriptor)) {
                 name = name.replace(CONSTRUCTOR_NAME, CONSTRUCTOR_PRETTY_NAME)
                         + PROXY_SUFFIX;
                 access = extendModifiers(access);
@@ -480,10 +1610,31 @@ public class BaseProxy {
             return hasClinit;
         }
 
+        private boolean isRenamed(String name, String descriptor) {
+            return renamedMethods == null || CONSTRUCTOR_NAME.equals(name)
+                    || renamedMethods.contains(name + descriptor);
+        }
+
     }
 
+    /**
+     * Clear the cache of the classes defined by the class loader of this
+     * proxy, the caches of other class loaders are kept.
+     */
     public void clear() {
-        classCache.clear();
+        clear(classLoader);
+        loaderClassCache = null;
+    }
+
+    /**
+     * Clear the cache of the classes defined by {@code classLoader}.
+     */
+    public static void clear(ClassLoader classLoader) {
+        synchronized (classCaches) {
+            classCaches.remove(classLoader);
+        }
+        classCache.values()
+                .removeIf(clazz -> clazz.getClassLoader() == classLoader);
     }
 
 }
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import com.chuan.simple.helper.exception.SimpleProxyException;
+
+/**
+ * <p>
+ * A {@link MethodInterceptor} which coalesces the concurrent calls of a
+ * single-key method like {@code User load(long id)} into one call of a bulk
+ * loader like {@code Map<Long, User> loadAll(Set<Long>)}, each caller gets
+ * the value of its own key, null if the key is absent in the loaded map.
+ * <p>
+ * The first caller of a batch waits for the window or until the batch has
+ * {@code maxBatchSize} distinct keys, then invokes the loader in its own
+ * thread, the later callers of the batch wait for the result. The
+ * exception of the loader is thrown to all the callers of the batch.
+ * <p>
+ * The other methods are invoked on the delegate if it implements them,
+ * otherwise on the original methods.
+ * @see ProxyHelper#batch(Class, BatchingInterceptor)
+ */
+public final class BatchingInterceptor<K, V> implements MethodInterceptor {
+
+    private final String methodName;
+
+    private final Class<?> keyType;
+
+    private final Function<? super Set<K>,
+            ? extends Map<K, ? extends V>> loader;
+
+    private final int maxBatchSize;
+
+    private final long windowNanos;
+
+    private final Object delegate;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition closed = lock.newCondition();
+
+    /** The batch which accepts keys, guarded by {@link #lock}. */
+    private Batch<K, V> current;
+
+    private final LongAdder callCount = new LongAdder();
+
+    private final LongAdder batchCount = new LongAdder();
+
+    /**
+     * @see #BatchingInterceptor(Method, Function, int, long, TimeUnit,
+     *      Object)
+     */
+    public BatchingInterceptor(Method method,
+            Function<? super Set<K>, ? extends Map<K, ? extends V>> loader,
+            int maxBatchSize, long window, TimeUnit unit) {
+        this(method, loader, maxBatchSize, window, unit, null);
+    }
+
+    /**
+     * @param method
+     *            the batched method which takes the key only
+     * @param loader
+     *            the bulk loader which gets the values of the keys
+     * @param maxBatchSize
+     *            the maximum count of distinct keys of a batch
+     * @param window
+     *            the time the first caller of a batch waits for others
+     * @param delegate
+     *            the instance which implements the other methods, nullable
+     */
+    public BatchingInterceptor(Method method,
+            Function<? super Set<K>, ? extends Map<K, ? extends V>> loader,
+            int maxBatchSize, long window, TimeUnit unit, Object delegate) {
+        if (method == null || method.getParameterCount() != 1
+                || loader == null || maxBatchSize <= 0 || window < 0
+                || unit == null) {
+            throw new IllegalArgumentException("Invalid parameter " + method
+                    + "," + loader + "," + maxBatchSize + "," + window);
+        }
+        this.methodName = method.getName();
+        this.keyType = method.getParameterTypes()[0];
+        this.loader = loader;
+        this.maxBatchSize = maxBatchSize;
+        this.windowNanos = unit.toNanos(window);
+        this.delegate = delegate;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object intercept(Object proxy, Method method, Object[] args,
+            MethodInvoker invoker) throws Throwable {
+        if (isBatched(method)) {
+            return batch((K) args[0]);
+        }
+        if (method != null && delegate != null
+                && method.getDeclaringClass().isInstance(delegate)) {
+            return MethodInvokers.of(method).invoke(delegate, args);
+        }
+        return invoker.invoke(proxy, args);
+    }
+
+    /**
+     * Get the count of the calls of the batched method.
+     */
+    public long getCallCount() {
+        return callCount.sum();
+    }
+
+    /**
+     * Get the count of the calls of the loader.
+     */
+    public long getBatchCount() {
+        return batchCount.sum();
+    }
+
+    private boolean isBatched(Method method) {
+        if (method == null || method.getParameterCount() != 1
+                || method.getParameterTypes()[0] != keyType) {
+            return false;
+        }
+        String name = method.getName();
+        return name.equals(methodName) || name.length() == methodName.length()
+                + BaseProxy.PROXY_SUFFIX.length()
+                && name.startsWith(methodName)
+                && name.endsWith(BaseProxy.PROXY_SUFFIX);
+    }
+
+    private Object batch(K key) throws Throwable {
+        callCount.increment();
+        Batch<K, V> batch;
+        CompletableFuture<V> result;
+        boolean first;
+        lock.lock();
+        try {
+            batch = current;
+            first = batch == null;
+            if (first) {
+                batch = new Batch<>();
+                current = batch;
+            }
+            result = batch.add(key);
+            if (batch.size() >= maxBatchSize) {
+                current = null;
+                closed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (first) {
+            awaitClosed(batch);
+            batchCount.increment();
+            batch.load(loader);
+        }
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SimpleProxyException("Batched call interrupted", e);
+        }
+    }
+
+    /**
+     * Wait until {@code batch} is closed by the size or the window, the
+     * batch is closed at once if interrupted.
+     */
+    private void awaitClosed(Batch<K, V> batch) {
+        boolean interrupted = false;
+        lock.lock();
+        try {
+            long nanos = windowNanos;
+            while (current == batch && nanos > 0) {
+                try {
+                    nanos = closed.awaitNanos(nanos);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    break;
+                }
+            }
+            if (current == batch) {
+                current = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BatchingInterceptor[" + methodName + ",maxBatchSize:"
+                + maxBatchSize + ",call:" + getCallCount() + ",batch:"
+                + getBatchCount() + "]";
+    }
+
+    /**
+     * The results of the distinct keys, the keys are added while it is
+     * {@link BatchingInterceptor#current}.
+     */
+    private static class Batch<K, V> {
+
+        private final Map<K, CompletableFuture<V>> results =
+                new LinkedHashMap<>();
+
+        private CompletableFuture<V> add(K key) {
+            return results.computeIfAbsent(key,
+                    k -> new CompletableFuture<>());
+        }
+
+        private int size() {
+            return results.size();
+        }
+
+        private void load(Function<? super Set<K>,
+                ? extends Map<K, ? extends V>> loader) {
+            Map<K, ? extends V> loaded;
+            try {
+                loaded = loader
+                        .apply(Collections.unmodifiableSet(results.keySet()));
+            } catch (Throwable e) {
+                for (CompletableFuture<V> result : results.values()) {
+                    result.completeExceptionally(e);
+                }
+                return;
+            }
+            for (Map.Entry<K, CompletableFuture<V>> entry : results
+                    .entrySet()) {
+                entry.getValue().complete(
+                        loaded == null ? null : loaded.get(entry.getKey()));
+            }
+        }
+
+    }
+
+}
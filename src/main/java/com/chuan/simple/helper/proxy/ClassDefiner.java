@@ -0,0 +1,41 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+/**
+ * Strategy which defines the generated classes.
+ * @see ClassDefiners
+ */
+@FunctionalInterface
+public interface ClassDefiner {
+
+    /**
+     * Define class {@code name} by {@code classLoader}.
+     * @param classLoader
+     *            the class loader which defines the class
+     * @param host
+     *            the class in the same package and class loader as the
+     *            defined class, null if there is none
+     * @param name
+     *            the binary name of class
+     * @param bytes
+     *            the bytecode of class
+     * @return the defined class
+     */
+    Class<?> define(ClassLoader classLoader, Class<?> host, String name,
+            byte[] bytes) throws Exception;
+
+}
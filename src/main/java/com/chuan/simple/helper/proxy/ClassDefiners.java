@@ -0,0 +1,174 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.security.ProtectionDomain;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.chuan.simple.helper.exception.SimpleProxyException;
+
+/**
+ * <p>
+ * The {@link ClassDefiner} strategies, which are selected at runtime.
+ * <p>
+ * {@link #lookup()} defines class by {@code MethodHandles.Lookup.defineClass}
+ * of Java 9+ into the package of the host class, it needs neither
+ * {@code setAccessible} on {@code ClassLoader} nor {@code --add-opens}.
+ * {@link #reflective()} invokes {@code ClassLoader.defineClass}
+ * reflectively, it works on Java 8 or with {@code --add-opens
+ * java.base/java.lang=ALL-UNNAMED}, and defines class into any class
+ * loader. {@link #getDefault()} prefers the latter where it is accessible,
+ * since it is measured faster than {@code privateLookupIn} and
+ * {@code Lookup.defineClass}, and falls back to the former on Java 9+
+ * without {@code --add-opens}.
+ */
+public final class ClassDefiners {
+
+    private static final Log LOG = LogFactory.getLog(ClassDefiners.class);
+
+    private static final Method classLoaderDefineClassMethod;
+
+    /** {@code MethodHandles.privateLookupIn(Class, Lookup)} */
+    private static final MethodHandle privateLookupIn;
+
+    /** {@code Lookup.defineClass(byte[])} */
+    private static final MethodHandle lookupDefineClass;
+
+    private static final ClassDefiner REFLECTIVE = ClassDefiners::reflect;
+
+    private static final ClassDefiner LOOKUP = ClassDefiners::lookup;
+
+    private static final ClassDefiner DEFAULT = ClassDefiners::define;
+
+    static {
+        Method classLoaderDefineClass = null;
+        try {
+            classLoaderDefineClass = ClassLoader.class.getDeclaredMethod(
+                    "defineClass", String.class, byte[].class, Integer.TYPE,
+                    Integer.TYPE, ProtectionDomain.class);
+            classLoaderDefineClass.setAccessible(true);
+        } catch (Throwable t) {
+            LOG.debug("ClassLoader.defineClass is inaccessible", t);
+            classLoaderDefineClass = null;
+        }
+        classLoaderDefineClassMethod = classLoaderDefineClass;
+        MethodHandle lookupIn = null;
+        MethodHandle defineClass = null;
+        try {
+            Lookup lookup = MethodHandles.lookup();
+            lookupIn = lookup.findStatic(MethodHandles.class,
+                    "privateLookupIn", MethodType.methodType(Lookup.class,
+                            Class.class, Lookup.class));
+            defineClass = lookup.findVirtual(Lookup.class, "defineClass",
+                    MethodType.methodType(Class.class, byte[].class));
+        } catch (ReflectiveOperationException e) {
+            LOG.debug("Lookup.defineClass is unsupported", e);
+            lookupIn = null;
+            defineClass = null;
+        }
+        privateLookupIn = lookupIn;
+        lookupDefineClass = defineClass;
+    }
+
+    /**
+     * Get the definer which uses {@link #reflective()} if it is accessible,
+     * otherwise {@link #lookup()} if the host class is in the same package
+     * and class loader.
+     */
+    public static ClassDefiner getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Get the definer by {@code ClassLoader.defineClass}, null if it is
+     * inaccessible.
+     */
+    public static ClassDefiner reflective() {
+        return classLoaderDefineClassMethod == null ? null : REFLECTIVE;
+    }
+
+    /**
+     * Get the definer by {@code Lookup.defineClass}, null if it is
+     * unsupported.
+     */
+    public static ClassDefiner lookup() {
+        return lookupDefineClass == null ? null : LOOKUP;
+    }
+
+    /**
+     * Whether {@code name} can be defined by {@link #lookup()} with
+     * {@code host}.
+     */
+    public static boolean isLookupDefinable(ClassLoader classLoader,
+            Class<?> host, String name) {
+        if (lookupDefineClass == null || host == null || host.isArray()
+                || host.isPrimitive()
+                || host.getClassLoader() != classLoader) {
+            return false;
+        }
+        String hostName = host.getName();
+        int index = hostName.lastIndexOf('.');
+        return index == name.lastIndexOf('.')
+                && name.regionMatches(0, hostName, 0, index + 1);
+    }
+
+    private static Class<?> define(ClassLoader classLoader, Class<?> host,
+            String name, byte[] bytes) throws Exception {
+        if (classLoaderDefineClassMethod != null) {
+            return reflect(classLoader, host, name, bytes);
+        }
+        if (!isLookupDefinable(classLoader, host, name)) {
+            throw new SimpleProxyException("Can't define " + name + " by "
+                    + classLoader + ",ClassLoader.defineClass is inaccessible"
+                    + " without --add-opens java.base/java.lang=ALL-UNNAMED");
+        }
+        return lookup(classLoader, host, name, bytes);
+    }
+
+    private static Class<?> reflect(ClassLoader classLoader, Class<?> host,
+            String name, byte[] bytes) throws Exception {
+        return (Class<?>) classLoaderDefineClassMethod.invoke(classLoader,
+                name, bytes, 0, bytes.length, null);
+    }
+
+    private static Class<?> lookup(ClassLoader classLoader, Class<?> host,
+            String name, byte[] bytes) throws Exception {
+        if (!isLookupDefinable(classLoader, host, name)) {
+            throw new SimpleProxyException(
+                    "Can't define " + name + " by lookup of " + host);
+        }
+        try {
+            Lookup lookup = (Lookup) privateLookupIn.invoke(host,
+                    MethodHandles.lookup());
+            return (Class<?>) lookupDefineClass.invoke(lookup, bytes);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new SimpleProxyException("Define " + name + " failed", t);
+        }
+    }
+
+    private ClassDefiners() {
+    }
+
+}
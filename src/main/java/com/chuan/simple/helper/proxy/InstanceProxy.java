@@ -31,8 +31,8 @@ import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 
-import com.chuan.simple.helper.clazz.BuilderNameHelper;
 import com.chuan.simple.helper.common.StringHelper;
+import com.chuan.simple.helper.exception.SimpleProxyException;
 import com.chuan.simple.helper.method.MethodHelper;
 
 /**
@@ -42,15 +42,25 @@ public class InstanceProxy extends BaseProxy {
 
     private static final Log log = LogFactory.getLog(InstanceProxy.class);
 
+    /** Factories of the classes overriding all the declared methods. */
+    private volatile ClassValue<ProxyFactory> declaredFactories =
+            newDeclaredFactories();
+
     public InstanceProxy() {
     }
 
     /**
+     * Override all the methods declared by {@code parent}, the factory is
+     * cached by {@code parent} so that the key is not rebuilt.
      * @see InstanceProxy#instance(InvocationHandler, Class, Method[], Class[])
      */
     public Object instance(InvocationHandler handler, Class<?> parent) {
-        return instance(handler, parent, parent.getDeclaredMethods(),
-                new Class[0]);
+        try {
+            return declaredFactories.get(parent).newInstance(handler);
+        } catch (Exception e) {
+            log.error("Instance by proxy failed", e);
+        }
+        return null;
     }
 
     /**
@@ -101,44 +111,100 @@ public class InstanceProxy extends BaseProxy {
     public Object instance(InvocationHandler handler, Class<?> parent,
             Method[] overrides, Class<?>[] interfaces) {
         try {
-            String className = generateClassName(parent, handler);
-            Class<?> clazz = classCache.get(className);
-            if (clazz==null){
-                byte[] bytes = generateClass(Template.class, className, parent,
-                        overrides, interfaces);
-                clazz = defineClass(BuilderNameHelper.toClassName(className),
-                        bytes, 0, bytes.length, null);
-                setHandler(clazz, handler);
-                classCache.put(className, clazz);
-            }
-            Object bean = clazz.newInstance();
-            return bean;
+            return instanceFactory(parent, overrides, interfaces)
+                    .newInstance(handler);
+        } catch (Exception e) {
+            log.error("Instance by proxy failed", e);
+        }
+        return null;
+    }
+
+    /**
+     * Get the proxy class which extends {@code parent} and implements
+     * {@code interfaces}, the class is shared by all the handlers and
+     * instantiated with a handler.
+     * @see #instance(InvocationHandler, Class, Method[], Class[])
+     */
+    public Class<?> instanceClass(Class<?> parent, Method[] overrides,
+            Class<?>[] interfaces) throws IOException {
+        return getProxyClass(instanceShape(parent, overrides, interfaces));
+    }
+
+    /**
+     * @see #instanceClass(Class, Method[], Class[])
+     */
+    protected ProxyShape instanceShape(Class<?> parent, Method[] overrides,
+            Class<?>[] interfaces) {
+        ProxyKey key = ProxyKey.instance(parent, overrides, interfaces,
+                getClassLoader());
+        return new ProxyShape(key, className -> generateClass(Template.class,
+                className, parent, overrides, interfaces), null);
+    }
+
+    /**
+     * Get the factory of {@link #instanceClass(Class, Method[], Class[])},
+     * whose {@link ProxyFactory#newInstance(InvocationHandler)} creates
+     * instance without reflection.
+     */
+    public ProxyFactory instanceFactory(Class<?> parent, Method[] overrides,
+            Class<?>[] interfaces) throws IOException {
+        return ProxyFactories.of(instanceClass(parent, overrides, interfaces),
+                getClassDefiner());
+    }
+
+    /**
+     * Create instance which extends {@code parent} and implements
+     * {@code interfaces}, the methods of {@code parent} which have
+     * interceptors in {@code chain} are overridden.
+     * @see #chainFactory(InterceptorChain, Class, Class[])
+     */
+    public Object intercept(InterceptorChain chain, Class<?> parent,
+            Class<?>[] interfaces) {
+        try {
+            return chainFactory(chain, parent, interfaces).newInstance(chain);
         } catch (Exception e) {
             log.error("Instance by proxy failed", e);
         }
         return null;
     }
 
-    protected byte[] generateClass(Class<?> initializer, String className,
-            Class<?> parent, Method[] overrides, Class<?>[] interfaceClasses)
-            throws IOException {
+    /**
+     * Get the factory of the proxy class which overrides the methods
+     * selected by {@code chain}, the interceptors of the overridden methods
+     * are resolved as the class is generated. The factory should be
+     * instantiated with {@code chain}.
+     * @see InterceptorChain#select(Class)
+     */
+    public ProxyFactory chainFactory(InterceptorChain chain, Class<?> parent,
+            Class<?>[] interfaces) throws IOException {
+        Class<?> proxyClass =
+                instanceClass(parent, chain.select(parent), interfaces);
+        chain.resolve(proxyClass);
+        return ProxyFactories.of(proxyClass, getClassDefiner());
+    }
+
+    protected ProxyClassWriter generateClass(Class<?> initializer,
+            String className, Class<?> parent, Method[] overrides,
+            Class<?>[] interfaceClasses) throws IOException {
         String[] interfaces =StringHelper.ARRAY_EMPTY;
         if (interfaceClasses != null && interfaceClasses.length > 0) {
             interfaces = getInternalNames(interfaceClasses);
         }
-        ClassWriter writer = new ClassWriter(0);
-        new ClassReader(initializer.getName()).setClassName(className)
+        ProxyClassWriter writer = new ProxyClassWriter(className, null);
+        templateReader(initializer).setClassName(className)
                 .setMethodFilter(new BaseProxy.TemplateMethodFilter())
                 .accept(writer, ClassReader.SKIP_DEBUG);
         writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, className, null,
                 Type.getInternalName(parent), interfaces);
         modifyConstructor(writer, parent, className);
+        createHandlerConstructor(writer, className, new Class<?>[0]);
         implInterfaces(writer, interfaceClasses, className);
         if (overrides != null && overrides.length > 0) {
-            overrideMethods(writer, overrides, className);
+            overrideMethods(writer, overrides, className, parent,
+                    interfaceClasses);
         }
         generalHandling(writer, className, false);
-        return writer.toByteArray();
+        return writer;
     }
 
     private void implInterfaces(ClassWriter writer, Class<?>[] interfaceClasses,
@@ -153,7 +219,7 @@ public class InstanceProxy extends BaseProxy {
                     continue;
                 }
                 if (method.isDefault()) {
-                    overrideMethod(writer, method, className);
+                    overrideMethod(writer, method, className, clazz);
                     continue;
                 }
                 String[] exceptions = getExceptionsDesc(method);
@@ -167,13 +233,49 @@ public class InstanceProxy extends BaseProxy {
 
     protected void overrideMethods(ClassWriter writer, Method[] methods,
             String className) {
+        overrideMethods(writer, methods, className, null, null);
+    }
+
+    /**
+     * Override {@code methods} of the proxy class which extends
+     * {@code parent} and implements {@code interfaces}, a default method is
+     * overridden only if it is inherited by the proxy class.
+     */
+    protected void overrideMethods(ClassWriter writer, Method[] methods,
+            String className, Class<?> parent, Class<?>[] interfaces) {
         for (Method method : methods) {
-            overrideMethod(writer, method, className);
+            Class<?> superOwner = superOwner(method, parent, interfaces);
+            if (superOwner != null) {
+                overrideMethod(writer, method, className, superOwner);
+            }
+        }
+    }
+
+    /**
+     * Find the direct super type of the proxy class which the original of
+     * {@code method} is invoked on. INVOKESPECIAL of a default method is only
+     * legal on a direct superinterface, so the default method inherited by an
+     * indirect superinterface is invoked on the direct one or the parent.
+     * @return the super type, null if {@code method} is not inherited
+     */
+    private Class<?> superOwner(Method method, Class<?> parent,
+            Class<?>[] interfaces) {
+        Class<?> owner = method.getDeclaringClass();
+        if (!owner.isInterface() || parent == null) {
+            return owner;
         }
+        if (interfaces != null) {
+            for (Class<?> clazz : interfaces) {
+                if (owner.isAssignableFrom(clazz)) {
+                    return clazz;
+                }
+            }
+        }
+        return owner.isAssignableFrom(parent) ? parent : null;
     }
 
     private void overrideMethod(ClassWriter writer, Method method,
-            String className) {
+            String className, Class<?> superOwner) {
         int modifiers = method.getModifiers();
         if (Modifier.isPrivate(modifiers) || Modifier.isFinal(modifiers)
                 || Modifier.isNative(modifiers)
@@ -192,28 +294,58 @@ public class InstanceProxy extends BaseProxy {
         MethodVisitor methodVisitorSuper = writer.visitMethod(overrideModifiers,
                 method.getName() + PROXY_SUFFIX,
                 Type.getMethodDescriptor(method), null, exceptions);
-        redirectSuper(method, methodVisitorSuper);
+        redirectSuper(method, methodVisitorSuper, superOwner);
     }
     
-    private void redirectSuper(Method method, MethodVisitor methodVisitor) {
-        int size = Type.getType(method).getArgumentsAndReturnSizes() >> 2;
-        Class<?>[] parameterTypes = method.getParameterTypes();
-        methodVisitor.visitMaxs(size, size);
-        for (int count = -1, i = 0; i < size; i++, count++) {
-            int opcode = Opcodes.ALOAD;
-            if (i > 0) {
-                opcode = Type.getType(parameterTypes[count])
-                        .getOpcode(Opcodes.ILOAD);
-            }
-            methodVisitor.visitVarInsn(opcode, i);
-            if (i > 0 && isWideType(parameterTypes[count])) {
-                i++;
-            }
-        }
+    private void redirectSuper(Method method, MethodVisitor methodVisitor,
+            Class<?> superOwner) {
+        Type type = Type.getType(method);
+        int size = type.getArgumentsAndReturnSizes() >> 2;
+        methodVisitor.visitMaxs(Math.max(size, type.getReturnType().getSize()),
+                size);
+        methodVisitor.visitVarInsn(Opcodes.ALOAD, 0);
+        loadArguments(method, methodVisitor, 1);
         methodVisitor.visitMethodInsn(Opcodes.INVOKESPECIAL,
-                Type.getInternalName(method.getDeclaringClass()),
-                method.getName(), Type.getMethodDescriptor(method), false);
+                Type.getInternalName(superOwner), method.getName(),
+                Type.getMethodDescriptor(method), superOwner.isInterface());
         methodReturn(method, methodVisitor);
     }
 
+    /**
+     * The original of the overridden method is the method of parent or the
+     * default method of interface, which is invoked by the method renamed
+     * with {@link #PROXY_SUFFIX}.
+     */
+    @Override
+    protected boolean hasOriginal(Method method, Object instance) {
+        return !Modifier.isAbstract(method.getModifiers());
+    }
+
+    private ClassValue<ProxyFactory> newDeclaredFactories() {
+        return new ClassValue<ProxyFactory>() {
+            @Override
+            protected ProxyFactory computeValue(Class<?> parent) {
+                try {
+                    return instanceFactory(parent,
+                            parent.getDeclaredMethods(), null);
+                } catch (IOException e) {
+                    throw new SimpleProxyException(
+                            "Instance proxy of " + parent + " failed", e);
+                }
+            }
+        };
+    }
+
+    @Override
+    public void setClassLoader(ClassLoader classLoader) {
+        super.setClassLoader(classLoader);
+        declaredFactories = newDeclaredFactories();
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        declaredFactories = newDeclaredFactories();
+    }
+
 }
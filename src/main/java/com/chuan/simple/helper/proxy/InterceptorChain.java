@@ -0,0 +1,303 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import com.chuan.simple.helper.common.PatternHelper;
+
+/**
+ * <p>
+ * An immutable chain of {@link MethodInterceptor}s, each of which applies to
+ * the methods accepted by its matcher, such as
+ * {@code InterceptorChain.of("**.Bean.get*", timing).with("save*", auth)}.
+ * <p>
+ * The matchers are evaluated when the proxy class is generated: only the
+ * methods which have interceptors are overridden by
+ * {@link InstanceProxy#chainFactory}, the others keep the bytecode of the
+ * parent. The interceptors of each method of a proxy class are resolved
+ * once into an array, so that a call neither evaluates the matchers nor
+ * goes through the interceptors which don't apply.
+ */
+public final class InterceptorChain implements MethodInterceptor {
+
+    private static final MethodInterceptor[] INTERCEPTORS_EMPTY =
+            new MethodInterceptor[0];
+
+    @SuppressWarnings("unchecked")
+    private static final Predicate<Method>[] MATCHERS_EMPTY =
+            (Predicate<Method>[]) new Predicate<?>[0];
+
+    private final Predicate<Method>[] matchers;
+
+    private final MethodInterceptor[] interceptors;
+
+    /** Interceptors of the methods by the declaring class. */
+    private final ClassValue<Map<Method, MethodInterceptor[]>> resolved =
+            new ClassValue<Map<Method, MethodInterceptor[]>>() {
+                @Override
+                protected Map<Method, MethodInterceptor[]> computeValue(
+                        Class<?> type) {
+                    return resolveMethods(type);
+                }
+            };
+
+    /** Methods of the parents which have interceptors. */
+    private final ClassValue<Method[]> selected = new ClassValue<Method[]>() {
+        @Override
+        protected Method[] computeValue(Class<?> parent) {
+            return selectMethods(parent);
+        }
+    };
+
+    private InterceptorChain(Predicate<Method>[] matchers,
+            MethodInterceptor[] interceptors) {
+        this.matchers = matchers;
+        this.interceptors = interceptors;
+    }
+
+    /**
+     * @see #of(Predicate, MethodInterceptor)
+     * @see #matching(String)
+     */
+    public static InterceptorChain of(String pattern,
+            MethodInterceptor interceptor) {
+        return of(matching(pattern), interceptor);
+    }
+
+    public static InterceptorChain of(Predicate<Method> matcher,
+            MethodInterceptor interceptor) {
+        return empty().with(matcher, interceptor);
+    }
+
+    public static InterceptorChain empty() {
+        return new InterceptorChain(MATCHERS_EMPTY, INTERCEPTORS_EMPTY);
+    }
+
+    /**
+     * @see #with(Predicate, MethodInterceptor)
+     * @see #matching(String)
+     */
+    public InterceptorChain with(String pattern,
+            MethodInterceptor interceptor) {
+        return with(matching(pattern), interceptor);
+    }
+
+    /**
+     * Create a chain which invokes {@code interceptor} after the
+     * interceptors of this chain, for the methods accepted by
+     * {@code matcher}.
+     */
+    public InterceptorChain with(Predicate<Method> matcher,
+            MethodInterceptor interceptor) {
+        if (matcher == null || interceptor == null) {
+            throw new IllegalArgumentException(
+                    "Invalid parameter " + matcher + "," + interceptor);
+        }
+        int length = interceptors.length;
+        Predicate<Method>[] newMatchers = Arrays.copyOf(matchers, length + 1);
+        MethodInterceptor[] newInterceptors =
+                Arrays.copyOf(interceptors, length + 1);
+        newMatchers[length] = matcher;
+        newInterceptors[length] = interceptor;
+        return new InterceptorChain(newMatchers, newInterceptors);
+    }
+
+    /**
+     * Match the method which is annotated by {@code annotationType}, or
+     * whose declaring class is.
+     */
+    public static Predicate<Method> annotatedWith(
+            Class<? extends Annotation> annotationType) {
+        if (annotationType == null) {
+            throw new IllegalArgumentException(
+                    "Invalid parameter " + annotationType);
+        }
+        return method -> method.isAnnotationPresent(annotationType)
+                || method.getDeclaringClass()
+                        .isAnnotationPresent(annotationType);
+    }
+
+    /**
+     * Match the method by {@link PatternHelper#matchName(String, String)},
+     * the pattern is matched against the method name if it contains no
+     * {@code '.'}, otherwise the qualified name like
+     * {@code com.foo.Bar.getName}.
+     */
+    public static Predicate<Method> matching(String pattern) {
+        if (pattern == null) {
+            throw new IllegalArgumentException("Invalid parameter " + pattern);
+        }
+        if (pattern.indexOf('.') < 0) {
+            return method -> PatternHelper.matchStrings(pattern,
+                    method.getName());
+        }
+        return method -> PatternHelper.matchName(pattern,
+                method.getDeclaringClass().getName() + '.'
+                        + method.getName());
+    }
+
+    /**
+     * Get the interceptors which apply to {@code method}.
+     */
+    public MethodInterceptor[] getInterceptors(Method method) {
+        List<MethodInterceptor> matched = new ArrayList<>(matchers.length);
+        for (int i = 0; i < matchers.length; i++) {
+            if (matchers[i].test(method)) {
+                matched.add(interceptors[i]);
+            }
+        }
+        return matched.toArray(new MethodInterceptor[matched.size()]);
+    }
+
+    /**
+     * Whether any interceptor applies to {@code method}, which can select
+     * the methods of {@link WholeProxy} and {@link WrapProxy}.
+     */
+    public boolean matches(Method method) {
+        for (Predicate<Method> matcher : matchers) {
+            if (matcher.test(method)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the methods declared by {@code parent} which have interceptors and
+     * can be overridden.
+     */
+    public Method[] select(Class<?> parent) {
+        return selected.get(parent).clone();
+    }
+
+    /**
+     * Resolve the interceptors of the methods declared by
+     * {@code proxyClass}, which is done once for each class.
+     */
+    public void resolve(Class<?> proxyClass) {
+        resolved.get(proxyClass);
+    }
+
+    @Override
+    public Object intercept(Object proxy, Method method, Object[] args,
+            MethodInvoker invoker) throws Throwable {
+        MethodInterceptor[] matched = null;
+        if (method != null) {
+            matched = resolved.get(method.getDeclaringClass()).get(method);
+        }
+        if (matched == null) {
+            return invoker.invoke(proxy, args);
+        }
+        return proceed(matched, 0, proxy, method, args, invoker);
+    }
+
+    private static Object proceed(MethodInterceptor[] matched, int index,
+            Object proxy, Method method, Object[] args,
+            MethodInvoker invoker) throws Throwable {
+        if (index == matched.length) {
+            return invoker.invoke(proxy, args);
+        }
+        return matched[index].intercept(proxy, method, args,
+                (target, arguments) -> proceed(matched, index + 1, target,
+                        method, arguments, invoker));
+    }
+
+    private Method[] selectMethods(Class<?> parent) {
+        List<Method> methods = new ArrayList<>();
+        for (Method method : parent.getDeclaredMethods()) {
+            int modifiers = method.getModifiers();
+            if (Modifier.isPrivate(modifiers) || Modifier.isFinal(modifiers)
+                    || Modifier.isStatic(modifiers) || method.isSynthetic()) {
+                continue;
+            }
+            if (matches(method)) {
+                methods.add(method);
+            }
+        }
+        return methods.toArray(new Method[methods.size()]);
+    }
+
+    /**
+     * The interceptors of a method renamed with {@link BaseProxy#PROXY_SUFFIX}
+     * are those of the method it overrides.
+     */
+    private Map<Method, MethodInterceptor[]> resolveMethods(Class<?> type) {
+        Map<Method, MethodInterceptor[]> methods = new HashMap<>();
+        for (Method method : type.getDeclaredMethods()) {
+            MethodInterceptor[] matched =
+                    getInterceptors(findOriginal(type, method));
+            if (matched.length > 0) {
+                methods.put(method, matched);
+            }
+        }
+        return methods.isEmpty() ? Collections.emptyMap() : methods;
+    }
+
+    private static Method findOriginal(Class<?> type, Method method) {
+        String name = method.getName();
+        if (!name.endsWith(BaseProxy.PROXY_SUFFIX)) {
+            return method;
+        }
+        name = name.substring(0,
+                name.length() - BaseProxy.PROXY_SUFFIX.length());
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        Method original = findDeclared(type.getSuperclass(), name,
+                parameterTypes);
+        for (int i = 0; original == null && i < type.getInterfaces().length;
+                i++) {
+            original = findDeclared(type.getInterfaces()[i], name,
+                    parameterTypes);
+        }
+        if (original == null) {
+            original = findDeclared(type, name, parameterTypes);
+        }
+        return original == null ? method : original;
+    }
+
+    /**
+     * Find the method in {@code type}, its super classes and interfaces.
+     */
+    private static Method findDeclared(Class<?> type, String name,
+            Class<?>[] parameterTypes) {
+        if (type == null) {
+            return null;
+        }
+        try {
+            return type.getDeclaredMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            // not declared by this type
+        }
+        Method method = findDeclared(type.getSuperclass(), name,
+                parameterTypes);
+        for (int i = 0; method == null && i < type.getInterfaces().length;
+                i++) {
+            method = findDeclared(type.getInterfaces()[i], name,
+                    parameterTypes);
+        }
+        return method;
+    }
+
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import com.chuan.simple.helper.common.StringHelper;
+import com.chuan.simple.helper.exception.SimpleProxyException;
+
+/**
+ * <p>
+ * Proxy by means of creating the target lazily, the target is created on
+ * the first method call and then the calls are delegated to it directly.
+ * <p>
+ * The proxy class extends the class or implements the interface, and holds
+ * a {@link LazyTarget}. The public methods are delegated to the target
+ * except {@code equals} and {@code hashCode} of {@link Object}, which keep
+ * the identity of the proxy and don't create the target. The constructor
+ * without parameters of class is invoked by the proxy itself, which should
+ * be cheap.
+ * <p>
+ * The protected and package-private methods are not delegated, they run on
+ * the proxy itself, which is the instance created by the constructor
+ * without parameters rather than the target.
+ */
+public class LazyProxy extends BaseProxy {
+
+    private static final Log log = LogFactory.getLog(LazyProxy.class);
+
+    public static final String LAZY_TARGET_FIELD = "lazy$TARGET";
+
+    public LazyProxy() {
+    }
+
+    /**
+     * Create proxy of {@code type} whose target is created by
+     * {@code factory} on the first method call.
+     * @param type
+     *            the class or the interface of the target
+     * @param factory
+     *            the factory of the target, which is invoked once
+     * @return the proxy, null if failed
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T lazy(Class<T> type, Supplier<? extends T> factory) {
+        try {
+            return (T) ProxyFactories.of(lazyClass(type), getClassDefiner())
+                    .newInstance(null, new LazyTarget<>(factory));
+        } catch (Exception e) {
+            log.error("Lazy proxy failed", e);
+        }
+        return null;
+    }
+
+    /**
+     * Get the class of {@link #lazy(Class, Supplier)}, which is constructed
+     * with a {@link LazyTarget}.
+     */
+    public Class<?> lazyClass(Class<?> type) throws IOException {
+        int modifiers = type.getModifiers();
+        if (type.isPrimitive() || type.isArray()
+                || Modifier.isFinal(modifiers)) {
+            throw new SimpleProxyException(type + " can't be proxied");
+        }
+        ProxyKey key = ProxyKey.lazy(type, getClassLoader());
+        return getProxyClass(key, className -> generateClass(type, className),
+                null);
+    }
+
+    private ProxyClassWriter generateClass(Class<?> type, String className) {
+        ProxyClassWriter writer = new ProxyClassWriter(className, type);
+        boolean isInterface = type.isInterface();
+        String superName = Type
+                .getInternalName(isInterface ? Object.class : type);
+        String[] interfaces = isInterface
+                ? new String[] { Type.getInternalName(type) }
+                : StringHelper.ARRAY_EMPTY;
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER,
+                className, null, superName, interfaces);
+        writer.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL,
+                LAZY_TARGET_FIELD, Type.getDescriptor(LazyTarget.class), null,
+                null);
+        createLazyConstructor(writer, type, className, superName);
+        try {
+            for (Method method : getDelegatedMethods(type).values()) {
+                delegateMethod(writer, method, type, className);
+            }
+        } catch (NoSuchMethodException e) {
+            throw new SimpleProxyException("Lazy proxy of " + type + " failed",
+                    e);
+        }
+        visitSource(writer);
+        writer.visitEnd();
+        return writer;
+    }
+
+    /**
+     * Get the public methods of {@code type} to be delegated by name and
+     * descriptor, the final and static methods are excluded.
+     */
+    private Map<String, Method> getDelegatedMethods(Class<?> type)
+            throws NoSuchMethodException {
+        Map<String, Method> methods = new LinkedHashMap<>();
+        Method toString = Object.class.getMethod("toString");
+        methods.put(toString.getName() + Type.getMethodDescriptor(toString),
+                toString);
+        for (Method method : type.getMethods()) {
+            int modifiers = method.getModifiers();
+            if (Modifier.isFinal(modifiers) || Modifier.isStatic(modifiers)
+                    || method.getDeclaringClass() == Object.class) {
+                continue;
+            }
+            methods.putIfAbsent(
+                    method.getName() + Type.getMethodDescriptor(method),
+                    method);
+        }
+        return methods;
+    }
+
+    private void createLazyConstructor(ClassWriter writer, Class<?> type,
+            String className, String superName) {
+        if (!type.isInterface()) {
+            Constructor<?> constructor = null;
+            try {
+                constructor = type.getDeclaredConstructor();
+            } catch (NoSuchMethodException e) {
+                // checked below
+            }
+            if (constructor == null
+                    || Modifier.isPrivate(constructor.getModifiers())) {
+                throw new SimpleProxyException("Lazy proxy of " + type
+                        + " needs a constructor without parameters");
+            }
+        }
+        String targetDesc = Type.getDescriptor(LazyTarget.class);
+        MethodVisitor methodVisitor = writer.visitMethod(Opcodes.ACC_PUBLIC,
+                CONSTRUCTOR_NAME, "(" + targetDesc + ")V", null,
+                StringHelper.ARRAY_EMPTY);
+        methodVisitor.visitMaxs(2, 2);
+        methodVisitor.visitVarInsn(Opcodes.ALOAD, 0);
+        methodVisitor.visitMethodInsn(Opcodes.INVOKESPECIAL, superName,
+                CONSTRUCTOR_NAME, VOID_METHOD_NAME, false);
+        methodVisitor.visitVarInsn(Opcodes.ALOAD, 0);
+        methodVisitor.visitVarInsn(Opcodes.ALOAD, 1);
+        methodVisitor.visitFieldInsn(Opcodes.PUTFIELD, className,
+                LAZY_TARGET_FIELD, targetDesc);
+        methodVisitor.visitInsn(Opcodes.RETURN);
+        methodVisitor.visitEnd();
+    }
+
+    /**
+     * Invoke {@code method} on the target got from {@link LazyTarget}.
+     */
+    private void delegateMethod(ClassWriter writer, Method method,
+            Class<?> type, String className) {
+        Type methodType = Type.getType(method);
+        int size = methodType.getArgumentsAndReturnSizes() >> 2;
+        int modifiers = method.getModifiers() & ~Opcodes.ACC_ABSTRACT
+                & ~Opcodes.ACC_NATIVE;
+        MethodVisitor methodVisitor = writer.visitMethod(modifiers,
+                method.getName(), methodType.getDescriptor(), null,
+                getExceptionsDesc(method));
+        methodVisitor.visitMaxs(
+                Math.max(size, methodType.getReturnType().getSize()), size);
+        methodVisitor.visitVarInsn(Opcodes.ALOAD, 0);
+        methodVisitor.visitFieldInsn(Opcodes.GETFIELD, className,
+                LAZY_TARGET_FIELD, Type.getDescriptor(LazyTarget.class));
+        methodVisitor.visitMethodInsn(Opcodes.INVOKEVIRTUAL,
+                Type.getInternalName(LazyTarget.class), "get",
+                "()Ljava/lang/Object;", false);
+        methodVisitor.visitTypeInsn(Opcodes.CHECKCAST,
+                Type.getInternalName(type));
+        loadArguments(method, methodVisitor, 1);
+        boolean isInterface = type.isInterface()
+                && method.getDeclaringClass() != Object.class;
+        methodVisitor.visitMethodInsn(
+                isInterface ? Opcodes.INVOKEINTERFACE : Opcodes.INVOKEVIRTUAL,
+                isInterface ? Type.getInternalName(type)
+                        : Type.getInternalName(method.getDeclaringClass()
+                                == Object.class ? Object.class : type),
+                method.getName(), methodType.getDescriptor(), isInterface);
+        methodReturn(method, methodVisitor);
+        methodVisitor.visitEnd();
+    }
+
+}
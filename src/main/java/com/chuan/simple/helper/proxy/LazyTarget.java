@@ -0,0 +1,69 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import java.util.function.Supplier;
+
+import com.chuan.simple.helper.exception.SimpleProxyException;
+
+/**
+ * The target of lazy proxy, which is created by the factory on the first
+ * {@link #get()} and published by double-checked locking. The factory is
+ * released once the target is created.
+ * @see LazyProxy
+ */
+public final class LazyTarget<T> implements Supplier<T> {
+
+    private Supplier<? extends T> factory;
+
+    private volatile T target;
+
+    public LazyTarget(Supplier<? extends T> factory) {
+        if (factory == null) {
+            throw new IllegalArgumentException("Invalid parameter " + factory);
+        }
+        this.factory = factory;
+    }
+
+    @Override
+    public T get() {
+        T result = target;
+        if (result == null) {
+            synchronized (this) {
+                result = target;
+                if (result == null) {
+                    result = factory.get();
+                    if (result == null) {
+                        throw new SimpleProxyException(
+                                "Lazy target created by " + factory
+                                        + " is null");
+                    }
+                    target = result;
+                    factory = null;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Whether the target is created.
+     */
+    public boolean isInitialized() {
+        return target != null;
+    }
+
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.chuan.simple.helper.common.ObjectHelper;
+
+/**
+ * <p>
+ * A {@link MethodInterceptor} which caches the results of each method by
+ * the proxy and the argument values, thus an interceptor can be shared by
+ * the proxies. The proxies are compared by identity, the array arguments
+ * are compared by their elements with {@link ObjectHelper#hashCode(Object)}
+ * and {@link ObjectHelper#equals(Object, Object)} and copied as the results
+ * are cached. The exceptions are not cached.
+ * <p>
+ * The cache of each method holds at most {@code maximumSize} results, the
+ * earliest cached ones are evicted first, and a result expires after the
+ * given time since it is cached. A cached result keeps its proxy reachable
+ * until it is evicted or expired. Concurrent misses of the same arguments
+ * may invoke the method more than once, the last result is kept.
+ * <p>
+ * The methods to memoize are selected by the proxy, such as
+ * <pre>
+ * {@code
+ *  ProxyHelper.memoize(Bean.class,
+ *          InterceptorChain.annotatedWith(Cached.class), memoizer);
+ *  ProxyHelper.memoize(Bean.class, bean, method -> ..., memoizer);
+ * }
+ * </pre>
+ * @see ProxyHelper#memoize(Class, java.util.function.Predicate,
+ *      MemoizingInterceptor)
+ */
+public final class MemoizingInterceptor implements MethodInterceptor {
+
+    private static final Object NULL = new Object();
+
+    private final int maximumSize;
+
+    /** Nanoseconds before a result expires, 0 if it never expires. */
+    private final long expireNanos;
+
+    private final Map<Method, MethodCache> caches = new ConcurrentHashMap<>();
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * Create an interceptor whose results never expire.
+     */
+    public MemoizingInterceptor(int maximumSize) {
+        this(maximumSize, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param maximumSize
+     *            the maximum count of results of each method
+     * @param expireAfterWrite
+     *            the time a result expires after it is cached, 0 if it
+     *            never expires
+     */
+    public MemoizingInterceptor(int maximumSize, long expireAfterWrite,
+            TimeUnit unit) {
+        if (maximumSize <= 0 || expireAfterWrite < 0 || unit == null) {
+            throw new IllegalArgumentException("Invalid parameter "
+                    + maximumSize + "," + expireAfterWrite + "," + unit);
+        }
+        this.maximumSize = maximumSize;
+        this.expireNanos = unit.toNanos(expireAfterWrite);
+    }
+
+    @Override
+    public Object intercept(Object proxy, Method method, Object[] args,
+            MethodInvoker invoker) throws Throwable {
+        if (method == null) {
+            return invoker.invoke(proxy, args);
+        }
+        MethodCache cache = caches.get(method);
+        if (cache == null) {
+            cache = caches.computeIfAbsent(method, m -> new MethodCache());
+        }
+        Arguments key = new Arguments(proxy, args);
+        Entry entry = cache.entries.get(key);
+        long now = expireNanos == 0 ? 0 : System.nanoTime();
+        if (entry != null) {
+            if (entry.isAlive(now)) {
+                hitCount.increment();
+                return entry.value == NULL ? null : entry.value;
+            }
+            cache.entries.remove(key, entry);
+        }
+        missCount.increment();
+        Object result = invoker.invoke(proxy, args);
+        Arguments copy = key.copy();
+        cache.put(copy, new Entry(copy, result == null ? NULL : result,
+                expireNanos == 0 ? 0 : now + expireNanos));
+        return result;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Get the count of results evicted for the size, the expired ones are
+     * excluded.
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Get the count of cached results of all the methods, which may include
+     * expired ones.
+     */
+    public int size() {
+        int size = 0;
+        for (MethodCache cache : caches.values()) {
+            size += cache.entries.size();
+        }
+        return size;
+    }
+
+    /**
+     * Remove all the cached results, the statistics are kept.
+     */
+    public void clear() {
+        caches.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "MemoizingInterceptor[maximumSize:" + maximumSize + ",hit:"
+                + getHitCount() + ",miss:" + getMissCount() + ",eviction:"
+                + getEvictionCount() + "]";
+    }
+
+    /**
+     * The results of a method, every entry in {@link #entries} is also
+     * queued in {@link #order}, which holds at most {@link #maximumSize}
+     * entries.
+     */
+    private class MethodCache {
+
+        private final Map<Arguments, Entry> entries =
+                new ConcurrentHashMap<>();
+
+        private final Queue<Entry> order = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger orderSize = new AtomicInteger();
+
+        private void put(Arguments key, Entry entry) {
+            entries.put(key, entry);
+            order.offer(entry);
+            int size = orderSize.incrementAndGet();
+            while (size > maximumSize) {
+                Entry eldest = order.poll();
+                if (eldest == null) {
+                    break;
+                }
+                size = orderSize.decrementAndGet();
+                if (entries.remove(eldest.key, eldest)
+                        && eldest.isAlive(System.nanoTime())) {
+                    evictionCount.increment();
+                }
+            }
+        }
+
+    }
+
+    private static class Entry {
+
+        private final Arguments key;
+
+        private final Object value;
+
+        /** The {@link System#nanoTime()} it expires, 0 if never. */
+        private final long expireTime;
+
+        private Entry(Arguments key, Object value, long expireTime) {
+            this.key = key;
+            this.value = value;
+            this.expireTime = expireTime;
+        }
+
+        private boolean isAlive(long now) {
+            return expireTime == 0 || now - expireTime < 0;
+        }
+
+    }
+
+    private static class Arguments {
+
+        /** The proxy which is compared by identity. */
+        private final Object target;
+
+        private final Object[] values;
+
+        private final int hash;
+
+        private Arguments(Object target, Object[] values) {
+            this.target = target;
+            this.values = values == null ? ObjectHelper.ARRAY_EMPTY : values;
+            int result = System.identityHashCode(target);
+            for (Object value : this.values) {
+                result = 31 * result + ObjectHelper.hashCode(value);
+            }
+            this.hash = result;
+        }
+
+        private Arguments(Arguments arguments, Object[] values) {
+            this.target = arguments.target;
+            this.values = values;
+            this.hash = arguments.hash;
+        }
+
+        /**
+         * Copy the arguments to be cached, the array arguments owned by the
+         * caller are copied such that their later changes don't affect the
+         * key.
+         */
+        private Arguments copy() {
+            Object[] copied = values;
+            for (int i = 0; i < values.length; i++) {
+                Object value = values[i];
+                if (value != null && value.getClass().isArray()) {
+                    if (copied == values) {
+                        copied = values.clone();
+                    }
+                    int length = Array.getLength(value);
+                    copied[i] = Array.newInstance(
+                            value.getClass().getComponentType(), length);
+                    System.arraycopy(value, 0, copied[i], 0, length);
+                }
+            }
+            return copied == values ? this : new Arguments(this, copied);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Arguments)) {
+                return false;
+            }
+            Arguments other = (Arguments) obj;
+            if (hash != other.hash || target != other.target
+                    || values.length != other.values.length) {
+                return false;
+            }
+            for (int i = 0; i < values.length; i++) {
+                if (!ObjectHelper.equals(values[i], other.values[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import com.chuan.simple.helper.common.ObjectHelper;
+
+/**
+ * Companion of a generated proxy class, which invokes the original methods
+ * by index without reflection. The index of each method is allocated while
+ * the proxy class is generated and passed to the handler by a
+ * {@link MethodInvoker}.
+ * <p>
+ * The methods like {@code long get()} or {@code void set(long)} are also
+ * invoked by the specialized methods without boxing.
+ */
+public interface MethodDispatcher {
+
+    /**
+     * Invoke the original method of index {@code index}.
+     * @param index
+     *            the index of method
+     * @param target
+     *            the proxy or the wrapped instance, ignored by static method
+     * @param args
+     *            the arguments
+     * @return the result, primitive result is boxed and void result is null
+     */
+    Object invoke(int index, Object target, Object[] args) throws Throwable;
+
+    /**
+     * Get the count of the dispatched methods, whose indexes are from 0 to
+     * count - 1.
+     */
+    int getMethodCount();
+
+    default long invokeLong(int index, Object target) throws Throwable {
+        return (Long) invoke(index, target, ObjectHelper.ARRAY_EMPTY);
+    }
+
+    default double invokeDouble(int index, Object target) throws Throwable {
+        return (Double) invoke(index, target, ObjectHelper.ARRAY_EMPTY);
+    }
+
+    default int invokeInt(int index, Object target) throws Throwable {
+        return (Integer) invoke(index, target, ObjectHelper.ARRAY_EMPTY);
+    }
+
+    default void invokeVoid(int index, Object target, long arg)
+            throws Throwable {
+        invoke(index, target, new Object[] { arg });
+    }
+
+    default void invokeVoid(int index, Object target, double arg)
+            throws Throwable {
+        invoke(index, target, new Object[] { arg });
+    }
+
+    default void invokeVoid(int index, Object target, int arg)
+            throws Throwable {
+        invoke(index, target, new Object[] { arg });
+    }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+
+/**
+ * An {@link InvocationHandler} which receives a {@link MethodInvoker} of the
+ * original method, the proxies created by {@link ProxyHelper} pass the
+ * invoker instead of calling {@link #invoke(Object, Method, Object[])}.
+ */
+@FunctionalInterface
+public interface MethodInterceptor extends InvocationHandler {
+
+    /**
+     * @param proxy
+     *            the proxy, or the wrapped instance of wrap proxy
+     * @param method
+     *            the original method, or the abstract method implemented by
+     *            the proxy if there is no original method
+     * @param args
+     *            the arguments
+     * @param invoker
+     *            invoker of {@code method} which doesn't use reflection
+     * @return the result
+     */
+    Object intercept(Object proxy, Method method, Object[] args,
+            MethodInvoker invoker) throws Throwable;
+
+    @Override
+    default Object invoke(Object proxy, Method method, Object[] args)
+            throws Throwable {
+        return intercept(proxy, method, args, MethodInvokers.of(method));
+    }
+
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+/**
+ * Invoker of the original method, which is passed to
+ * {@link MethodInterceptor} so that the original method can be invoked
+ * without reflection.
+ */
+@FunctionalInterface
+public interface MethodInvoker {
+
+    /**
+     * Invoke the original method on {@code target}.
+     * @param target
+     *            the proxy or the wrapped instance which is passed to the
+     *            interceptor, ignored by static method
+     * @param args
+     *            the arguments
+     * @return the result, primitive result is boxed
+     */
+    Object invoke(Object target, Object... args) throws Throwable;
+
+}
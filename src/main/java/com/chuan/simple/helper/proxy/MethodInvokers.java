@@ -0,0 +1,177 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.chuan.simple.helper.exception.SimpleProxyException;
+
+/**
+ * Create {@link MethodInvoker} by {@link MethodHandle} or
+ * {@link MethodDispatcher}, the invoker of each method is created once.
+ */
+public final class MethodInvokers {
+
+    private static final Log LOG = LogFactory.getLog(MethodInvokers.class);
+
+    private static final MethodType INVOKER_TYPE = MethodType
+            .methodType(Object.class, Object.class, Object[].class);
+
+    private static final MethodInvoker UNIMPLEMENTED = (target, args) -> {
+        throw new SimpleProxyException("Unimplemented method");
+    };
+
+    /**
+     * Invokers by the declaring class, such that the classes are not kept
+     * from unloading.
+     */
+    private static volatile ClassValue<Map<Method, MethodInvoker>> invokers =
+            newInvokers();
+
+    /**
+     * Get the invoker of {@code method}.
+     * @return the invoker which throws {@link SimpleProxyException} if
+     *         {@code method} is null
+     */
+    public static MethodInvoker of(Method method) {
+        if (method == null) {
+            return UNIMPLEMENTED;
+        }
+        Map<Method, MethodInvoker> invokerCache =
+                invokers.get(method.getDeclaringClass());
+        MethodInvoker invoker = invokerCache.get(method);
+        if (invoker == null) {
+            invoker = invokerCache.computeIfAbsent(method,
+                    MethodInvokers::create);
+        }
+        return invoker;
+    }
+
+    /**
+     * Get the invokers of the methods dispatched by {@code dispatcher}, the
+     * index of invoker is the index of method.
+     */
+    public static MethodInvoker[] of(MethodDispatcher dispatcher, int count) {
+        MethodInvoker[] invokers = new MethodInvoker[count];
+        for (int i = 0; i < count; i++) {
+            invokers[i] = new DispatchedInvoker(dispatcher, i);
+        }
+        return invokers;
+    }
+
+    public static void clear() {
+        invokers = newInvokers();
+    }
+
+    private static ClassValue<Map<Method, MethodInvoker>> newInvokers() {
+        return new ClassValue<Map<Method, MethodInvoker>>() {
+            @Override
+            protected Map<Method, MethodInvoker> computeValue(
+                    Class<?> type) {
+                return new ConcurrentHashMap<>(8);
+            }
+        };
+    }
+
+    private static MethodInvoker create(Method method) {
+        try {
+            if (!Modifier.isPublic(method.getModifiers()) || !Modifier
+                    .isPublic(method.getDeclaringClass().getModifiers())) {
+                method.setAccessible(true);
+            }
+            MethodHandle handle = MethodHandles.lookup().unreflect(method);
+            if (Modifier.isStatic(method.getModifiers())) {
+                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+            }
+            MethodHandle invoker = handle
+                    .asSpreader(Object[].class, method.getParameterCount())
+                    .asType(INVOKER_TYPE);
+            return (target, args) -> invoker.invokeExact(target, args);
+        } catch (Exception e) {
+            LOG.debug("Create method handle of " + method
+                    + " failed,use reflection instead", e);
+        }
+        return (target, args) -> {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        };
+    }
+
+    private MethodInvokers() {
+    }
+
+    private static class DispatchedInvoker implements PrimitiveInvoker {
+
+        private final MethodDispatcher dispatcher;
+
+        private final int index;
+
+        private DispatchedInvoker(MethodDispatcher dispatcher, int index) {
+            this.dispatcher = dispatcher;
+            this.index = index;
+        }
+
+        @Override
+        public Object invoke(Object target, Object... args) throws Throwable {
+            return dispatcher.invoke(index, target, args);
+        }
+
+        @Override
+        public long invokeLong(Object target) throws Throwable {
+            return dispatcher.invokeLong(index, target);
+        }
+
+        @Override
+        public double invokeDouble(Object target) throws Throwable {
+            return dispatcher.invokeDouble(index, target);
+        }
+
+        @Override
+        public int invokeInt(Object target) throws Throwable {
+            return dispatcher.invokeInt(index, target);
+        }
+
+        @Override
+        public void invokeVoid(Object target, long arg) throws Throwable {
+            dispatcher.invokeVoid(index, target, arg);
+        }
+
+        @Override
+        public void invokeVoid(Object target, double arg) throws Throwable {
+            dispatcher.invokeVoid(index, target, arg);
+        }
+
+        @Override
+        public void invokeVoid(Object target, int arg) throws Throwable {
+            dispatcher.invokeVoid(index, target, arg);
+        }
+
+    }
+
+}
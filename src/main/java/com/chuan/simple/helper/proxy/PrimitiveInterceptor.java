@@ -0,0 +1,68 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import java.lang.reflect.Method;
+
+import com.chuan.simple.helper.common.ObjectHelper;
+
+/**
+ * <p>
+ * A {@link MethodInterceptor} with specialized callbacks for the methods
+ * like {@code long get()} or {@code void set(long)}, the signatures
+ * supported are {@code ()J}, {@code ()D}, {@code ()I}, {@code (J)V},
+ * {@code (D)V} and {@code (I)V}.
+ * <p>
+ * The arguments and the result of these methods are neither boxed nor
+ * collected into array, the callbacks delegate to
+ * {@link #intercept(Object, Method, Object[], MethodInvoker)} by default.
+ */
+public interface PrimitiveInterceptor extends MethodInterceptor {
+
+    default long interceptLong(Object proxy, Method method,
+            PrimitiveInvoker invoker) throws Throwable {
+        return (Long) intercept(proxy, method, ObjectHelper.ARRAY_EMPTY,
+                invoker);
+    }
+
+    default double interceptDouble(Object proxy, Method method,
+            PrimitiveInvoker invoker) throws Throwable {
+        return (Double) intercept(proxy, method, ObjectHelper.ARRAY_EMPTY,
+                invoker);
+    }
+
+    default int interceptInt(Object proxy, Method method,
+            PrimitiveInvoker invoker) throws Throwable {
+        return (Integer) intercept(proxy, method, ObjectHelper.ARRAY_EMPTY,
+                invoker);
+    }
+
+    default void interceptVoid(Object proxy, Method method, long arg,
+            PrimitiveInvoker invoker) throws Throwable {
+        intercept(proxy, method, new Object[] { arg }, invoker);
+    }
+
+    default void interceptVoid(Object proxy, Method method, double arg,
+            PrimitiveInvoker invoker) throws Throwable {
+        intercept(proxy, method, new Object[] { arg }, invoker);
+    }
+
+    default void interceptVoid(Object proxy, Method method, int arg,
+            PrimitiveInvoker invoker) throws Throwable {
+        intercept(proxy, method, new Object[] { arg }, invoker);
+    }
+
+}
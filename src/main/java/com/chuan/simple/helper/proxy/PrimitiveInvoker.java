@@ -0,0 +1,51 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import com.chuan.simple.helper.common.ObjectHelper;
+
+/**
+ * {@link MethodInvoker} of the methods like {@code long get()} or
+ * {@code void set(long)}, the invokers passed to
+ * {@link PrimitiveInterceptor} invoke the original method without boxing.
+ */
+public interface PrimitiveInvoker extends MethodInvoker {
+
+    default long invokeLong(Object target) throws Throwable {
+        return (Long) invoke(target, ObjectHelper.ARRAY_EMPTY);
+    }
+
+    default double invokeDouble(Object target) throws Throwable {
+        return (Double) invoke(target, ObjectHelper.ARRAY_EMPTY);
+    }
+
+    default int invokeInt(Object target) throws Throwable {
+        return (Integer) invoke(target, ObjectHelper.ARRAY_EMPTY);
+    }
+
+    default void invokeVoid(Object target, long arg) throws Throwable {
+        invoke(target, arg);
+    }
+
+    default void invokeVoid(Object target, double arg) throws Throwable {
+        invoke(target, arg);
+    }
+
+    default void invokeVoid(Object target, int arg) throws Throwable {
+        invoke(target, arg);
+    }
+
+}
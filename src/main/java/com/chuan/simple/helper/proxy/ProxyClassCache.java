@@ -0,0 +1,278 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.InitCodeholder;
+
+/**
+ * <p>
+ * The on-disk cache of the bytecode of generated proxy classes, such that
+ * the classes are defined without ASM after restart.
+ * <p>
+ * Each entry is a file named by the SHA-256 digest of the proxy structure,
+ * the bytecode of the classes in the structure with their super classes and
+ * super interfaces, the bytecode of the {@link #GENERATOR_CLASSES generator}
+ * and the Java version, so a stale entry is never hit. The entry is written
+ * to a temporary file and moved atomically, thus the directory can be shared
+ * by concurrent JVMs, it is replaced by a plain move where the file system
+ * does not support atomic move.
+ * @see BaseProxy#setClassFileCache(ProxyClassCache)
+ */
+public final class ProxyClassCache {
+
+    private static final Log LOG = LogFactory.getLog(ProxyClassCache.class);
+
+    private static final int MAGIC = 0x53504343;
+
+    private static final int VERSION = 1;
+
+    public static final String FILE_SUFFIX = ".classes";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** The classes whose bytecode decides the generated bytecode. */
+    static final Class<?>[] GENERATOR_CLASSES = { BaseProxy.class,
+            InstanceProxy.class, WholeProxy.class, WrapProxy.class,
+            LazyProxy.class, ProxyFactories.class, ProxyClassWriter.class,
+            ProxyKey.class, Template.class, ClassReader.class,
+            ClassWriter.class, InitCodeholder.class };
+
+    /** The digest of {@link #GENERATOR_CLASSES}, computed once. */
+    private static volatile byte[] generatorDigest;
+
+    private final Path directory;
+
+    public ProxyClassCache(Path directory) {
+        if (directory == null) {
+            throw new IllegalArgumentException(
+                    "Invalid parameter " + directory);
+        }
+        this.directory = directory;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Read the bytecode of the classes cached for {@code key} by internal
+     * name, the proxy class is the first. Return null if there is no entry
+     * or the entry is unreadable.
+     */
+    public Map<String, byte[]> read(ProxyKey key) {
+        String digest = digest(key);
+        if (digest == null) {
+            return null;
+        }
+        Path file = directory.resolve(digest + FILE_SUFFIX);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                    || !digest.equals(in.readUTF())) {
+                LOG.warn("Invalid proxy class cache " + file);
+                return null;
+            }
+            int count = in.readInt();
+            Map<String, byte[]> classes = new LinkedHashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                classes.put(name, bytes);
+            }
+            return classes;
+        } catch (IOException e) {
+            LOG.warn("Read proxy class cache " + file + " failed", e);
+        }
+        return null;
+    }
+
+    /**
+     * Whether the bytecode of {@code key} may be read from the cache, the
+     * entry is not validated.
+     */
+    public boolean contains(ProxyKey key) {
+        String digest = digest(key);
+        return digest != null
+                && Files.isRegularFile(directory.resolve(digest + FILE_SUFFIX));
+    }
+
+    /**
+     * Write the bytecode of the classes generated for {@code key}, the
+     * failure is logged only.
+     */
+    public void write(ProxyKey key, Map<String, byte[]> classes) {
+        String digest = digest(key);
+        if (digest == null || classes.isEmpty()) {
+            return;
+        }
+        Path file = directory.resolve(digest + FILE_SUFFIX);
+        Path temp = null;
+        try {
+            Files.createDirectories(directory);
+            temp = Files.createTempFile(directory, digest, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(digest);
+                out.writeInt(classes.size());
+                for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().length);
+                    out.write(entry.getValue());
+                }
+            }
+            move(temp, file);
+        } catch (IOException e) {
+            LOG.warn("Write proxy class cache " + file + " failed", e);
+        } finally {
+            deleteQuietly(temp);
+        }
+    }
+
+    /**
+     * Get the digest of {@code key}, return null if the bytecode of the
+     * classes in it is not readable.
+     */
+    public String digest(ProxyKey key) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            LOG.warn("Digest proxy class cache failed", e);
+            return null;
+        }
+        update(digest, VERSION + "\n" + System.getProperty("java.version")
+                + "\n" + key.getClassName() + "\n" + key.getDescriptor());
+        try {
+            digest.update(getGeneratorDigest());
+            for (Class<?> clazz : getClasses(key)) {
+                update(digest, "\n" + clazz.getName() + "\n");
+                digest.update(BaseProxy.readClassBytes(clazz));
+            }
+        } catch (IOException e) {
+            LOG.debug("Bytecode of " + key + " is not readable", e);
+            return null;
+        }
+        byte[] bytes = digest.digest();
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Get the classes of {@code key} with their super classes and super
+     * interfaces, the classes of the bootstrap class loader are excluded.
+     */
+    static Set<Class<?>> getClasses(ProxyKey key) {
+        Set<Class<?>> classes = new LinkedHashSet<>();
+        addClass(classes, key.getTarget());
+        for (Class<?> clazz : key.getInterfaces()) {
+            addClass(classes, clazz);
+        }
+        for (Class<?> clazz : key.getTypes()) {
+            addClass(classes, clazz);
+        }
+        return classes;
+    }
+
+    private static void addClass(Set<Class<?>> classes, Class<?> clazz) {
+        if (clazz == null || clazz.getClassLoader() == null
+                || !classes.add(clazz)) {
+            return;
+        }
+        addClass(classes, clazz.getSuperclass());
+        for (Class<?> superInterface : clazz.getInterfaces()) {
+            addClass(classes, superInterface);
+        }
+    }
+
+    private static byte[] getGeneratorDigest() throws IOException {
+        byte[] bytes = generatorDigest;
+        if (bytes == null) {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException(e);
+            }
+            for (Class<?> clazz : GENERATOR_CLASSES) {
+                update(digest, clazz.getName() + "\n");
+                digest.update(BaseProxy.readClassBytes(clazz));
+            }
+            bytes = digest.digest();
+            generatorDigest = bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * Move {@code source} to {@code target} atomically, or replace
+     * {@code target} if the file system does not support atomic move.
+     */
+    private void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            LOG.debug("Atomic move is not supported in " + directory, e);
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void update(MessageDigest digest, String text) {
+        digest.update(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.debug("Delete " + file + " failed", e);
+        }
+    }
+
+}
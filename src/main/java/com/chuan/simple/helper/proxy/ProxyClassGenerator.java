@@ -0,0 +1,237 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.chuan.simple.helper.clazz.BuilderNameHelper;
+import com.chuan.simple.helper.clazz.ClassHelper;
+import com.chuan.simple.helper.exception.SimpleProxyException;
+
+/**
+ * <p>
+ * Generate proxy classes ahead of time, such that they are loaded by
+ * {@link BaseProxy#loadProxyClass(String)} at runtime without ASM. The
+ * proxy class, its dispatcher and its factory are written to the output
+ * directory like {@code target/classes}, thus packaged into the jar.
+ * <p>
+ * The classes are defined into the class loader of the declared classes as
+ * they are at runtime, that is by {@code Lookup.defineClass} in the package
+ * of the {@link ProxyKey#getHost() host} on Java 9+ without
+ * {@code --add-opens}. The host of the interface proxies extend
+ * {@code java.lang.Object} is the first interface out of {@code java.*},
+ * only the proxies of {@code java.*} classes alone still need
+ * {@code --add-opens java.base/java.lang=ALL-UNNAMED}.
+ * <p>
+ * Each line of the declaration file declares a proxy class, the lines are
+ * like
+ *
+ * <pre>
+ * # comment
+ * instance com.foo.Bar [com.foo.Interface ...]
+ * whole com.foo.Bar
+ * wrap com.foo.Bar com.foo.BarImpl
+ * </pre>
+ *
+ * {@code instance} overrides the methods declared by the parent class like
+ * {@link InstanceProxy#instance(java.lang.reflect.InvocationHandler, Class)}
+ * except {@code java.lang.Object}, {@code whole} is the class shared by the
+ * handlers like {@link WholeProxy#proxyClass(Class)}.
+ * <p>
+ * Usage: {@code ProxyClassGenerator <output directory> <declaration file>
+ * ...}, the {@code proxy-aot} profile of the pom runs it in phase
+ * {@code process-classes} with {@code src/main/proxy/proxies.txt}, like
+ * {@code mvn -P proxy-aot package -Dproxy.declarations=<file>}.
+ */
+public final class ProxyClassGenerator {
+
+    public static final String KIND_INSTANCE = "instance";
+
+    public static final String KIND_WHOLE = "whole";
+
+    public static final String KIND_WRAP = "wrap";
+
+    /** The bytecode of the generated classes by internal name. */
+    private final Map<String, byte[]> classes = new LinkedHashMap<>();
+
+    private final ClassLoader classLoader;
+
+    private final InstanceProxy instanceProxy = new InstanceProxy() {
+        @Override
+        protected Class<?> defineClass(Class<?> host, String name,
+                byte[] bytes) {
+            return capture(super.defineClass(host, name, bytes), bytes);
+        }
+    };
+
+    private final WholeProxy wholeProxy = new WholeProxy() {
+        @Override
+        protected Class<?> defineClass(Class<?> host, String name,
+                byte[] bytes) {
+            return capture(super.defineClass(host, name, bytes), bytes);
+        }
+    };
+
+    private final WrapProxy wrapProxy = new WrapProxy() {
+        @Override
+        protected Class<?> defineClass(Class<?> host, String name,
+                byte[] bytes) {
+            return capture(super.defineClass(host, name, bytes), bytes);
+        }
+    };
+
+    /**
+     * @param classLoader
+     *            the class loader of the declared classes
+     */
+    public ProxyClassGenerator(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+        instanceProxy.setClassLoader(classLoader);
+        wholeProxy.setClassLoader(classLoader);
+        wrapProxy.setClassLoader(classLoader);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Usage: ProxyClassGenerator"
+                    + " <output directory> <declaration file> ...");
+        }
+        ProxyClassGenerator generator =
+                new ProxyClassGenerator(ClassHelper.getDefaultClassLoader());
+        for (int i = 1; i < args.length; i++) {
+            List<String> lines = Files.readAllLines(Paths.get(args[i]),
+                    StandardCharsets.UTF_8);
+            for (String line : lines) {
+                generator.declare(line);
+            }
+        }
+        generator.write(Paths.get(args[0]));
+    }
+
+    /**
+     * Generate the proxy class declared by {@code line}, blank line and
+     * comment starts with {@code #} are ignored.
+     */
+    public void declare(String line) {
+        String declaration = line.trim();
+        if (declaration.isEmpty() || declaration.startsWith("#")) {
+            return;
+        }
+        String[] parts = declaration.split("\\s+");
+        if (parts.length < 2) {
+            throw new IllegalArgumentException(line);
+        }
+        Class<?> target = ClassHelper.forName(parts[1], classLoader);
+        if (target == null) {
+            throw new SimpleProxyException("Class not found " + parts[1]);
+        }
+        switch (parts[0]) {
+        case KIND_INSTANCE:
+            instance(target, forNames(Arrays.copyOfRange(parts, 2,
+                    parts.length)));
+            break;
+        case KIND_WHOLE:
+            whole(target);
+            break;
+        case KIND_WRAP:
+            if (parts.length != 3) {
+                throw new IllegalArgumentException(line);
+            }
+            wrap(target, forNames(new String[] { parts[2] })[0]);
+            break;
+        default:
+            throw new IllegalArgumentException(line);
+        }
+    }
+
+    public void instance(Class<?> parent, Class<?>[] interfaces) {
+        Method[] overrides = Object.class.equals(parent) ? null
+                : parent.getDeclaredMethods();
+        try {
+            addFactory(instanceProxy.instanceClass(parent, overrides,
+                    interfaces));
+        } catch (IOException e) {
+            throw new SimpleProxyException(
+                    "Generate instance proxy of " + parent + " failed", e);
+        }
+    }
+
+    public void whole(Class<?> target) {
+        addFactory(wholeProxy.proxyClass(target));
+    }
+
+    public void wrap(Class<?> target, Class<?> delegateType) {
+        addFactory(wrapProxy.wrapClass(target, delegateType));
+    }
+
+    /**
+     * Write the generated classes to {@code directory} as class files.
+     */
+    public void write(Path directory) throws IOException {
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            Path file = directory.resolve(
+                    entry.getKey() + ClassHelper.CLASS_FILE_SUFFIX);
+            Files.createDirectories(file.getParent());
+            Files.write(file, entry.getValue());
+        }
+    }
+
+    /**
+     * Get the bytecode of the generated classes by internal name.
+     */
+    public Map<String, byte[]> getClasses() {
+        return classes;
+    }
+
+    private Class<?> capture(Class<?> clazz, byte[] bytes) {
+        if (clazz != null) {
+            classes.put(BuilderNameHelper.toResourcePath(clazz.getName()),
+                    bytes);
+        }
+        return clazz;
+    }
+
+    private void addFactory(Class<?> proxyClass) {
+        if (proxyClass == null) {
+            throw new SimpleProxyException("Generate proxy class failed");
+        }
+        byte[] bytes = ProxyFactories.generateFactory(proxyClass);
+        if (bytes != null) {
+            classes.put(ProxyFactories.getFactoryName(proxyClass), bytes);
+        }
+    }
+
+    private Class<?>[] forNames(String[] names) {
+        Class<?>[] types = new Class<?>[names.length];
+        for (int i = 0; i < names.length; i++) {
+            types[i] = ClassHelper.forName(names[i], classLoader);
+            if (types[i] == null) {
+                throw new SimpleProxyException("Class not found " + names[i]);
+            }
+        }
+        return types;
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.ClassWriter;
+
+/**
+ * The {@link ClassWriter} of proxy class, it allocates the index of each
+ * method whose original can be invoked by the {@link MethodDispatcher}.
+ */
+public class ProxyClassWriter extends ClassWriter {
+
+    private final String className;
+
+    private final Object instance;
+
+    private final List<Method> dispatchedMethods = new ArrayList<>();
+
+    /** The bytecode of the proxy class and its companions once defined. */
+    private final Map<String, byte[]> definedClasses = new LinkedHashMap<>();
+
+    /** The descriptors of the original methods by the method fields. */
+    private final Map<String, String> methodFields = new LinkedHashMap<>();
+
+    private byte[] bytes;
+
+    private byte[] dispatcherBytes;
+
+    /**
+     * @param className
+     *            the internal name of proxy class
+     * @param instance
+     *            the additional information of proxy, such as the delegate
+     *            type of wrap proxy
+     */
+    public ProxyClassWriter(String className, Object instance) {
+        super(0);
+        this.className = className;
+        this.instance = instance;
+    }
+
+    /**
+     * Allocate the index of {@code method}.
+     */
+    public int addDispatchedMethod(Method method) {
+        dispatchedMethods.add(method);
+        return dispatchedMethods.size() - 1;
+    }
+
+    public List<Method> getDispatchedMethods() {
+        return Collections.unmodifiableList(dispatchedMethods);
+    }
+
+    /**
+     * Record the static field {@code fieldName} which holds the original
+     * method like {@code get$ORIGINAL()I}.
+     */
+    public void addMethodField(String fieldName, String method) {
+        methodFields.put(fieldName, method);
+    }
+
+    public Map<String, String> getMethodFields() {
+        return Collections.unmodifiableMap(methodFields);
+    }
+
+    /**
+     * Record the bytecode of the defined class named {@code name}, which is
+     * an internal name.
+     */
+    public void addDefinedClass(String name, byte[] bytes) {
+        definedClasses.put(name, bytes);
+    }
+
+    public Map<String, byte[]> getDefinedClasses() {
+        return Collections.unmodifiableMap(definedClasses);
+    }
+
+    /**
+     * Complete the class with the bytecode of its dispatcher, such that the
+     * class is serialized once and {@link #toByteArray()} returns the same
+     * bytes. The writer must not be visited any more.
+     * @param dispatcherBytes
+     *            the bytecode of the dispatcher, null if there is none
+     */
+    public void complete(byte[] dispatcherBytes) {
+        this.bytes = super.toByteArray();
+        this.dispatcherBytes = dispatcherBytes;
+    }
+
+    @Override
+    public byte[] toByteArray() {
+        return bytes == null ? super.toByteArray() : bytes;
+    }
+
+    /**
+     * Get the bytecode of the dispatcher, null if the writer is not
+     * completed or there is no dispatcher.
+     */
+    public byte[] getDispatcherBytes() {
+        return dispatcherBytes;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public Object getInstance() {
+        return instance;
+    }
+
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import com.chuan.simple.helper.clazz.BuilderNameHelper;
+import com.chuan.simple.helper.exception.SimpleProxyException;
+
+/**
+ * <p>
+ * Create {@link ProxyFactory} of the proxy classes, the factory of each
+ * proxy class is generated once and named like {@code Proxy$$Factory}.
+ * <p>
+ * The factory invokes the constructors created by
+ * {@link BaseProxy#createHandlerConstructor}, which are the constructor takes
+ * only an {@link InvocationHandler} and the constructor of {@link WrapProxy}
+ * takes the wrapped instance and an {@link InvocationHandler}, or the
+ * constructor of {@link LazyProxy} takes a {@link LazyTarget}. Reflection is
+ * used instead if the constructor is not accessible by the generated factory.
+ */
+public final class ProxyFactories {
+
+    private static final Log LOG = LogFactory.getLog(ProxyFactories.class);
+
+    public static final String FACTORY_SUFFIX = "Factory";
+
+    private static final String HANDLER_DESC =
+            Type.getDescriptor(InvocationHandler.class);
+
+    private static final String OBJECT_DESC = Type.getDescriptor(Object.class);
+
+    private static final ClassValue<AtomicReference<ProxyFactory>> factories =
+            new ClassValue<AtomicReference<ProxyFactory>>() {
+                @Override
+                protected AtomicReference<ProxyFactory> computeValue(
+                        Class<?> type) {
+                    return new AtomicReference<>();
+                }
+            };
+
+    /**
+     * Get the factory of {@code proxyClass}, the factory class is defined by
+     * {@link ClassDefiners#getDefault()}.
+     * @throws SimpleProxyException
+     *             if there is no constructor takes a handler
+     */
+    public static ProxyFactory of(Class<?> proxyClass) {
+        return of(proxyClass, ClassDefiners.getDefault());
+    }
+
+    /**
+     * Get the factory of {@code proxyClass}, the factory class is defined by
+     * {@code classDefiner} if it is not defined yet.
+     * @throws SimpleProxyException
+     *             if there is no constructor takes a handler
+     * @see BaseProxy#getClassDefiner()
+     */
+    public static ProxyFactory of(Class<?> proxyClass,
+            ClassDefiner classDefiner) {
+        AtomicReference<ProxyFactory> holder = factories.get(proxyClass);
+        ProxyFactory factory = holder.get();
+        if (factory == null) {
+            synchronized (holder) {
+                factory = holder.get();
+                if (factory == null) {
+                    factory = create(proxyClass, classDefiner);
+                    holder.set(factory);
+                }
+            }
+        }
+        return factory;
+    }
+
+    /**
+     * Get the bytecode of the factory of {@code proxyClass}, return null if
+     * the factory can't be generated.
+     * @see #getFactoryName(Class)
+     */
+    public static byte[] generateFactory(Class<?> proxyClass) {
+        Constructor<?>[] constructors = findConstructors(proxyClass);
+        if (!isGeneratable(proxyClass, constructors)) {
+            return null;
+        }
+        return generateFactory(getFactoryName(proxyClass),
+                Type.getInternalName(proxyClass), constructors[0],
+                constructors[1]);
+    }
+
+    /**
+     * Get the internal name of the factory of {@code proxyClass}.
+     */
+    public static String getFactoryName(Class<?> proxyClass) {
+        return Type.getInternalName(proxyClass) + BaseProxy.LINK_STR
+                + FACTORY_SUFFIX;
+    }
+
+    private static ProxyFactory create(Class<?> proxyClass,
+            ClassDefiner classDefiner) {
+        Constructor<?>[] constructors = findConstructors(proxyClass);
+        if (isGeneratable(proxyClass, constructors)) {
+            try {
+                return generate(proxyClass, constructors[0], constructors[1],
+                        classDefiner);
+            } catch (Exception e) {
+                LOG.debug("Generate factory of " + proxyClass
+                        + " failed,use reflection instead", e);
+            }
+        }
+        return new ReflectiveFactory(constructors[0], constructors[1]);
+    }
+
+    /**
+     * Find the constructor takes only a handler and the constructor takes a
+     * target.
+     * @see #findTargetConstructor(Class)
+     */
+    private static Constructor<?>[] findConstructors(Class<?> proxyClass) {
+        Constructor<?> handlerConstructor =
+                findConstructor(proxyClass, InvocationHandler.class);
+        Constructor<?> targetConstructor = findTargetConstructor(proxyClass);
+        if (handlerConstructor == null && targetConstructor == null) {
+            throw new SimpleProxyException(
+                    "No constructor with handler of " + proxyClass);
+        }
+        return new Constructor<?>[] { handlerConstructor, targetConstructor };
+    }
+
+    /**
+     * Find the constructor takes a target by the kind of proxy, such that
+     * the constructors like {@code (Object, InvocationHandler)} of
+     * {@link WholeProxy} are not mistaken. The target constructor of
+     * {@link WrapProxy} takes the type of the instance field
+     * {@link BaseProxy#WRAPPER_TARGET} and a handler, the one of
+     * {@link LazyProxy} takes only a {@link LazyTarget}.
+     */
+    private static Constructor<?> findTargetConstructor(Class<?> proxyClass) {
+        Class<?> targetType =
+                getFieldType(proxyClass, BaseProxy.WRAPPER_TARGET);
+        if (targetType != null) {
+            return findConstructor(proxyClass, targetType,
+                    InvocationHandler.class);
+        }
+        if (getFieldType(proxyClass,
+                LazyProxy.LAZY_TARGET_FIELD) == LazyTarget.class) {
+            return findConstructor(proxyClass, LazyTarget.class);
+        }
+        return null;
+    }
+
+    private static Constructor<?> findConstructor(Class<?> proxyClass,
+            Class<?>... parameterTypes) {
+        try {
+            return proxyClass.getConstructor(parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static Class<?> getFieldType(Class<?> proxyClass, String name) {
+        try {
+            Field field = proxyClass.getDeclaredField(name);
+            if (Modifier.isStatic(field.getModifiers())
+                    || field.getType().isPrimitive()) {
+                return null;
+            }
+            return field.getType();
+        } catch (NoSuchFieldException e) {
+            return null;
+        }
+    }
+
+    private static boolean isGeneratable(Class<?> proxyClass,
+            Constructor<?>[] constructors) {
+        return Modifier.isPublic(proxyClass.getModifiers())
+                && (constructors[1] == null || Modifier.isPublic(
+                        constructors[1].getParameterTypes()[0]
+                                .getModifiers()));
+    }
+
+    private static ProxyFactory generate(Class<?> proxyClass,
+            Constructor<?> handlerConstructor,
+            Constructor<?> targetConstructor, ClassDefiner classDefiner)
+            throws Exception {
+        ClassLoader classLoader = proxyClass.getClassLoader();
+        String factoryName = getFactoryName(proxyClass);
+        Class<?> factoryClass;
+        synchronized (proxyClass) {
+            try {
+                factoryClass = Class.forName(
+                        BuilderNameHelper.toClassName(factoryName), false,
+                        classLoader);
+            } catch (ClassNotFoundException e) {
+                byte[] bytes = generateFactory(factoryName,
+                        Type.getInternalName(proxyClass), handlerConstructor,
+                        targetConstructor);
+                factoryClass = classDefiner.define(classLoader,
+                        proxyClass, BuilderNameHelper.toClassName(factoryName),
+                        bytes);
+            }
+        }
+        return (ProxyFactory) factoryClass.getDeclaredConstructor()
+                .newInstance();
+    }
+
+    private static byte[] generateFactory(String factoryName,
+            String proxyName, Constructor<?> handlerConstructor,
+            Constructor<?> targetConstructor) {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8,
+                Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER,
+                factoryName, null, Type.getInternalName(Object.class),
+                new String[] { Type.getInternalName(ProxyFactory.class) });
+        MethodVisitor constructor = writer.visitMethod(Opcodes.ACC_PUBLIC,
+                BaseProxy.CONSTRUCTOR_NAME, BaseProxy.VOID_METHOD_NAME, null,
+                null);
+        constructor.visitMaxs(1, 1);
+        constructor.visitVarInsn(Opcodes.ALOAD, 0);
+        constructor.visitMethodInsn(Opcodes.INVOKESPECIAL,
+                Type.getInternalName(Object.class), BaseProxy.CONSTRUCTOR_NAME,
+                BaseProxy.VOID_METHOD_NAME, false);
+        constructor.visitInsn(Opcodes.RETURN);
+        constructor.visitEnd();
+        if (handlerConstructor != null) {
+            MethodVisitor methodVisitor = writer.visitMethod(
+                    Opcodes.ACC_PUBLIC, "newInstance",
+                    "(" + HANDLER_DESC + ")" + OBJECT_DESC, null, null);
+            methodVisitor.visitMaxs(3, 2);
+            methodVisitor.visitTypeInsn(Opcodes.NEW, proxyName);
+            methodVisitor.visitInsn(Opcodes.DUP);
+            methodVisitor.visitVarInsn(Opcodes.ALOAD, 1);
+            methodVisitor.visitMethodInsn(Opcodes.INVOKESPECIAL, proxyName,
+                    BaseProxy.CONSTRUCTOR_NAME,
+                    Type.getConstructorDescriptor(handlerConstructor), false);
+            methodVisitor.visitInsn(Opcodes.ARETURN);
+            methodVisitor.visitEnd();
+        }
+        if (targetConstructor != null) {
+            Class<?> targetType = targetConstructor.getParameterTypes()[0];
+            MethodVisitor methodVisitor = writer.visitMethod(
+                    Opcodes.ACC_PUBLIC, "newInstance",
+                    "(" + HANDLER_DESC + OBJECT_DESC + ")" + OBJECT_DESC, null,
+                    null);
+            methodVisitor.visitMaxs(4, 3);
+            methodVisitor.visitTypeInsn(Opcodes.NEW, proxyName);
+            methodVisitor.visitInsn(Opcodes.DUP);
+            methodVisitor.visitVarInsn(Opcodes.ALOAD, 2);
+            methodVisitor.visitTypeInsn(Opcodes.CHECKCAST,
+                    Type.getInternalName(targetType));
+            if (targetConstructor.getParameterCount() > 1) {
+                methodVisitor.visitVarInsn(Opcodes.ALOAD, 1);
+            }
+            methodVisitor.visitMethodInsn(Opcodes.INVOKESPECIAL, proxyName,
+                    BaseProxy.CONSTRUCTOR_NAME,
+                    Type.getConstructorDescriptor(targetConstructor), false);
+            methodVisitor.visitInsn(Opcodes.ARETURN);
+            methodVisitor.visitEnd();
+        }
+        writer.visitSource("generated", null);
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private ProxyFactories() {
+    }
+
+    private static class ReflectiveFactory implements ProxyFactory {
+
+        private final Constructor<?> handlerConstructor;
+
+        private final Constructor<?> targetConstructor;
+
+        private ReflectiveFactory(Constructor<?> handlerConstructor,
+                Constructor<?> targetConstructor) {
+            this.handlerConstructor = handlerConstructor;
+            this.targetConstructor = targetConstructor;
+        }
+
+        @Override
+        public Object newInstance(InvocationHandler handler) {
+            if (handlerConstructor == null) {
+                return ProxyFactory.super.newInstance(handler);
+            }
+            return construct(handlerConstructor, handler);
+        }
+
+        @Override
+        public Object newInstance(InvocationHandler handler, Object target) {
+            if (targetConstructor == null) {
+                return ProxyFactory.super.newInstance(handler, target);
+            }
+            if (targetConstructor.getParameterCount() == 1) {
+                return construct(targetConstructor, target);
+            }
+            return construct(targetConstructor, target, handler);
+        }
+
+        private Object construct(Constructor<?> constructor,
+                Object... args) {
+            try {
+                return constructor.newInstance(args);
+            } catch (InvocationTargetException e) {
+                throw new SimpleProxyException("Create proxy instance failed",
+                        e.getTargetException());
+            } catch (ReflectiveOperationException e) {
+                throw new SimpleProxyException("Create proxy instance failed",
+                        e);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import java.lang.reflect.InvocationHandler;
+
+/**
+ * Factory of the instances of a proxy class, which is generated once for
+ * each proxy class so that an instance costs only an allocation.
+ * @see ProxyFactories#of(Class)
+ */
+public interface ProxyFactory {
+
+    /**
+     * Create instance redirected to {@code handler}, supported by the proxy
+     * classes of {@link InstanceProxy} and {@link WholeProxy}.
+     */
+    default Object newInstance(InvocationHandler handler) {
+        throw new UnsupportedOperationException(
+                "Instance without target is not supported by " + this);
+    }
+
+    /**
+     * Create instance with {@code target} redirected to {@code handler},
+     * {@code target} is the only argument of the constructor such as the
+     * wrapped instance of {@link WrapProxy}, or the {@link LazyTarget} of
+     * {@link LazyProxy} which ignores {@code handler}.
+     */
+    default Object newInstance(InvocationHandler handler, Object target) {
+        throw new UnsupportedOperationException(
+                "Instance with target is not supported by " + this);
+    }
+
+}
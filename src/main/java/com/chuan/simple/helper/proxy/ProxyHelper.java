@@ -15,14 +15,22 @@
  */
 package com.chuan.simple.helper.proxy;
 
+import java.io.IOException;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 /**
  * @see BaseProxy
  * @see InstanceProxy
  * @see WholeProxy
  * @see WrapProxy
+ * @see LazyProxy
  */
 public final class ProxyHelper {
 
@@ -32,6 +40,8 @@ public final class ProxyHelper {
 
     private static final WrapProxy wrapProxy = new WrapProxy();
 
+    private static final LazyProxy lazyProxy = new LazyProxy();
+
     /**
      * @see InstanceProxy#instance(InvocationHandler, Class[])
      */
@@ -72,6 +82,39 @@ public final class ProxyHelper {
                 interfaceClasses);
     }
 
+    /**
+     * @see InstanceProxy#instanceFactory(Class, Method[], Class[])
+     */
+    public static ProxyFactory instanceFactory(Class<?> parent,
+            Method[] overrides, Class<?>[] interfaceClasses)
+            throws IOException {
+        return instanceProxy.instanceFactory(parent, overrides,
+                interfaceClasses);
+    }
+
+    /**
+     * @see InstanceProxy#intercept(InterceptorChain, Class, Class[])
+     */
+    public static Object intercept(InterceptorChain chain, Class<?> parent) {
+        return instanceProxy.intercept(chain, parent, new Class<?>[0]);
+    }
+
+    /**
+     * @see InstanceProxy#intercept(InterceptorChain, Class, Class[])
+     */
+    public static Object intercept(InterceptorChain chain, Class<?> parent,
+            Class<?>[] interfaceClasses) {
+        return instanceProxy.intercept(chain, parent, interfaceClasses);
+    }
+
+    /**
+     * @see InstanceProxy#chainFactory(InterceptorChain, Class, Class[])
+     */
+    public static ProxyFactory chainFactory(InterceptorChain chain,
+            Class<?> parent, Class<?>[] interfaceClasses) throws IOException {
+        return instanceProxy.chainFactory(chain, parent, interfaceClasses);
+    }
+
     /**
      * @see WholeProxy#proxy(Class, InvocationHandler)
      */
@@ -79,6 +122,21 @@ public final class ProxyHelper {
         return wholeProxy.proxy(target, handler);
     }
 
+    /**
+     * @see WholeProxy#proxy(Class, InvocationHandler, Predicate)
+     */
+    public static Object proxy(Class<?> target, InvocationHandler handler,
+            Predicate<Method> selector) {
+        return wholeProxy.proxy(target, handler, selector);
+    }
+
+    /**
+     * @see WholeProxy#proxyClass(Class)
+     */
+    public static Class<?> proxyClass(Class<?> target) {
+        return wholeProxy.proxyClass(target);
+    }
+
     /**
      * @see WholeProxy#proxyClass(Class, InvocationHandler)
      */
@@ -87,6 +145,21 @@ public final class ProxyHelper {
         return wholeProxy.proxyClass(target, handler);
     }
 
+    /**
+     * @see WholeProxy#proxyFactory(Class)
+     */
+    public static ProxyFactory proxyFactory(Class<?> target) {
+        return wholeProxy.proxyFactory(target);
+    }
+
+    /**
+     * @see WholeProxy#proxyFactory(Class, Method[])
+     */
+    public static ProxyFactory proxyFactory(Class<?> target,
+            Method[] methods) {
+        return wholeProxy.proxyFactory(target, methods);
+    }
+
     /**
      * @see WrapProxy#wrap(Class, Object)
      */
@@ -103,13 +176,140 @@ public final class ProxyHelper {
     }
 
     /**
-     * @see WrapProxy#wrapClass(Class, Object, InvocationHandler)
+     * @see WrapProxy#wrap(Class, Object, InvocationHandler, Predicate)
+     */
+    public static Object wrap(Class<?> target, Object instance,
+            InvocationHandler handler, Predicate<Method> selector) {
+        return wrapProxy.wrap(target, instance, handler, selector);
+    }
+
+    /**
+     * @deprecated see
+     *             {@link WrapProxy#wrapClass(Class, Object, InvocationHandler)}
      */
+    @Deprecated
     public static Class<?> wrapClass(Class<?> target, Object instance,
             InvocationHandler handler) {
         return wrapProxy.wrapClass(target, instance, handler);
     }
 
+    /**
+     * @see WrapProxy#wrapClass(Class, Class)
+     */
+    public static Class<?> wrapClass(Class<?> target,
+            Class<?> delegateType) {
+        return wrapProxy.wrapClass(target, delegateType);
+    }
+
+    /**
+     * @see WrapProxy#wrapFactory(Class, Class)
+     */
+    public static ProxyFactory wrapFactory(Class<?> target,
+            Class<?> delegateType) {
+        return wrapProxy.wrapFactory(target, delegateType);
+    }
+
+    /**
+     * @see WrapProxy#wrapFactory(Class, Class, Method[])
+     */
+    public static ProxyFactory wrapFactory(Class<?> target,
+            Class<?> delegateType, Method[] methods) {
+        return wrapProxy.wrapFactory(target, delegateType, methods);
+    }
+
+    /**
+     * Create proxy of {@code parent} which memoizes the results of the
+     * methods accepted by {@code selector}, only these methods are
+     * overridden.
+     * @see InterceptorChain#annotatedWith(Class)
+     */
+    public static Object memoize(Class<?> parent, Predicate<Method> selector,
+            MemoizingInterceptor memoizer) {
+        return intercept(InterceptorChain.of(selector, memoizer), parent);
+    }
+
+    /**
+     * Wrap {@code instance} and memoize the results of the methods accepted
+     * by {@code selector}, the others are delegated directly.
+     * @see WrapProxy#wrap(Class, Object, InvocationHandler, Predicate)
+     */
+    public static Object memoize(Class<?> target, Object instance,
+            Predicate<Method> selector, MemoizingInterceptor memoizer) {
+        return wrapProxy.wrap(target, instance, memoizer, selector);
+    }
+
+    /**
+     * Create proxy of the interfaces whose calls of the batched method are
+     * coalesced by {@code batcher}.
+     * @see InstanceProxy#instance(InvocationHandler, Class[])
+     */
+    public static Object batch(Class<?>[] interfaceClasses,
+            BatchingInterceptor<?, ?> batcher) {
+        return instanceProxy.instance(batcher, interfaceClasses);
+    }
+
+    /**
+     * @see #batch(Class[], BatchingInterceptor)
+     */
+    public static Object batch(Class<?> interfaceClass,
+            BatchingInterceptor<?, ?> batcher) {
+        return batch(new Class<?>[] { interfaceClass }, batcher);
+    }
+
+    /**
+     * @see LazyProxy#lazy(Class, Supplier)
+     */
+    public static <T> T lazy(Class<T> type, Supplier<? extends T> factory) {
+        return lazyProxy.lazy(type, factory);
+    }
+
+    /**
+     * @see LazyProxy#lazyClass(Class)
+     */
+    public static Class<?> lazyClass(Class<?> type) throws IOException {
+        return lazyProxy.lazyClass(type);
+    }
+
+    /**
+     * @see #prepare(Collection, ForkJoinPool)
+     */
+    public static List<Class<?>> prepare(Collection<ProxySpec> specs) {
+        return prepare(specs, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Get the proxy classes of {@code specs} at once, such as at startup.
+     * The bytecode of the classes which are not cached yet is generated in
+     * parallel on {@code pool}, then the classes are defined in order. The
+     * order of {@code specs} is free, such as a subclass before its parent,
+     * since a proxy class never refers to another proxy class. The later
+     * calls of the same shapes hit the cache.
+     * @return the classes in the order of {@code specs}, null for the
+     *         failed ones
+     */
+    public static List<Class<?>> prepare(Collection<ProxySpec> specs,
+            ForkJoinPool pool) {
+        List<BaseProxy.ProxyShape> shapes = new ArrayList<>(specs.size());
+        for (ProxySpec spec : specs) {
+            shapes.add(getShape(spec));
+        }
+        return BaseProxy.prepare(shapes, pool);
+    }
+
+    private static BaseProxy.ProxyShape getShape(ProxySpec spec) {
+        switch (spec.getKind()) {
+        case ProxyKey.KIND_INSTANCE:
+            return instanceProxy.instanceShape(spec.getTarget(),
+                    spec.getMethods(), spec.getInterfaces());
+        case ProxyKey.KIND_WHOLE:
+            return wholeProxy.wholeShape(spec.getTarget(), spec.getMethods(),
+                    null);
+        default:
+            return wrapProxy.wrapShape(spec.getTarget(),
+                    spec.getDelegateType(), spec.getMethods());
+        }
+    }
+
     public static WholeProxy getWholeProxy() {
         return wholeProxy;
     }
@@ -122,6 +322,10 @@ public final class ProxyHelper {
         return wrapProxy;
     }
 
+    public static LazyProxy getLazyProxy() {
+        return lazyProxy;
+    }
+
     private ProxyHelper() {
     }
 
@@ -129,6 +333,20 @@ public final class ProxyHelper {
         instanceProxy.setClassLoader(classLoader);
         wholeProxy.setClassLoader(classLoader);
         wrapProxy.setClassLoader(classLoader);
+        lazyProxy.setClassLoader(classLoader);
+    }
+
+    /**
+     * Set the on-disk cache of the generated bytecode of all the proxies,
+     * null to disable it.
+     * @see BaseProxy#setClassFileCache(ProxyClassCache)
+     */
+    public synchronized static void setClassFileCache(
+            ProxyClassCache classFileCache) {
+        instanceProxy.setClassFileCache(classFileCache);
+        wholeProxy.setClassFileCache(classFileCache);
+        wrapProxy.setClassFileCache(classFileCache);
+        lazyProxy.setClassFileCache(classFileCache);
     }
 
     public synchronized static ClassLoader getClassLoader(){
@@ -138,7 +356,8 @@ public final class ProxyHelper {
     /**
      * Clear the generated classes by
      * changing the class loader and clear
-     * the class cache.
+     * the class cache of the old class loader.
+     * The caches of other class loaders are kept.
      *
      * <pre>
      * Conditions of GC to reclaim class:
@@ -149,11 +368,12 @@ public final class ProxyHelper {
      *
      * @param newClassLoader  the new class loader
      */
-    public static void refresh(ClassLoader newClassLoader){
-        setClassLoader(newClassLoader);
+    public synchronized static void refresh(ClassLoader newClassLoader){
         instanceProxy.clear();
+        wholeProxy.clear();
         wrapProxy.clear();
-        wrapProxy.clear();
+        lazyProxy.clear();
+        setClassLoader(newClassLoader);
     }
     
 }
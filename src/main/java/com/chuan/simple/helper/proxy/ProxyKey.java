@@ -0,0 +1,373 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.objectweb.asm.Type;
+
+import com.chuan.simple.helper.clazz.BuilderNameHelper;
+import com.chuan.simple.helper.common.StringHelper;
+import com.chuan.simple.helper.exception.SimpleProxyException;
+
+/**
+ * <p>
+ * The structural key of a generated proxy class, made up of the proxy kind,
+ * the target class, the implemented interfaces, the overridden methods, the
+ * additional types and the class loader which defines the class. Interfaces
+ * and methods are compared regardless of their order, null methods stand
+ * for all the methods and differ from no method.
+ * <p>
+ * The class name is derived from a SHA-256 digest of the structure, so the
+ * same structure always gets the same name. A key can be bound to an object
+ * such as a handler which is compared by identity, the name of a bound key
+ * ends with a sequence instead.
+ * <p>
+ * The classes, the binding and the class loader are weakly referenced, such
+ * that a cached key does not keep them from unloading.
+ */
+public final class ProxyKey {
+
+    public static final String KIND_INSTANCE = "Instance";
+
+    public static final String KIND_WHOLE = "Whole";
+
+    public static final String KIND_WRAP = "Wrap";
+
+    public static final String KIND_LAZY = "Lazy";
+
+    /** Count of hex chars of the digest used in class name. */
+    private static final int DIGEST_LENGTH = 16;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final Class<?>[] CLASSES_EMPTY = new Class<?>[0];
+
+    private static final AtomicLong bindingSequence = new AtomicLong();
+
+    private final String kind;
+
+    private final String[] methods;
+
+    private final int interfaceCount;
+
+    private final boolean bound;
+
+    /**
+     * The target, the interfaces, the types, the binding and the class
+     * loader in order.
+     */
+    private final Reference<?>[] references;
+
+    private final int hash;
+
+    private volatile String descriptor;
+
+    private volatile String className;
+
+    public ProxyKey(String kind, Class<?> target, Class<?>[] interfaces,
+            Method[] methods, Class<?>[] types, Object binding,
+            ClassLoader classLoader) {
+        if (kind == null || target == null) {
+            throw new IllegalArgumentException(
+                    "Invalid parameter " + kind + "," + target);
+        }
+        Class<?>[] sortedInterfaces = sortInterfaces(interfaces);
+        int typeCount = types == null ? 0 : types.length;
+        this.kind = kind;
+        this.methods = sortMethods(methods);
+        this.interfaceCount = sortedInterfaces.length;
+        this.bound = binding != null;
+        this.references = new Reference<?>[interfaceCount + typeCount + 3];
+        int result = kind.hashCode();
+        result = 31 * result + Arrays.hashCode(this.methods);
+        int index = 0;
+        result = 31 * result + reference(index++, target);
+        for (Class<?> clazz : sortedInterfaces) {
+            result = 31 * result + reference(index++, clazz);
+        }
+        for (int i = 0; i < typeCount; i++) {
+            result = 31 * result + reference(index++, types[i]);
+        }
+        result = 31 * result + reference(index++, binding);
+        result = 31 * result + reference(index, classLoader);
+        this.hash = result;
+    }
+
+    public static ProxyKey instance(Class<?> parent, Method[] overrides,
+            Class<?>[] interfaces, ClassLoader classLoader) {
+        return new ProxyKey(KIND_INSTANCE, parent, interfaces,
+                overrides == null ? new Method[0] : overrides, null, null,
+                classLoader);
+    }
+
+    public static ProxyKey whole(Class<?> target, Object binding,
+            ClassLoader classLoader) {
+        return whole(target, null, binding, classLoader);
+    }
+
+    /**
+     * @param methods
+     *            the proxied methods, null for all the methods
+     */
+    public static ProxyKey whole(Class<?> target, Method[] methods,
+            Object binding, ClassLoader classLoader) {
+        return new ProxyKey(KIND_WHOLE, target, null, methods, null, binding,
+                classLoader);
+    }
+
+    public static ProxyKey wrap(Class<?> target, Class<?> delegateType,
+            ClassLoader classLoader) {
+        return wrap(target, delegateType, null, classLoader);
+    }
+
+    /**
+     * @param methods
+     *            the methods redirected to the handler, null for all the
+     *            methods
+     */
+    public static ProxyKey wrap(Class<?> target, Class<?> delegateType,
+            Method[] methods, ClassLoader classLoader) {
+        return new ProxyKey(KIND_WRAP, target, null, methods,
+                new Class<?>[] { delegateType }, null, classLoader);
+    }
+
+    public static ProxyKey lazy(Class<?> type, ClassLoader classLoader) {
+        return new ProxyKey(KIND_LAZY, type, null, null, null, null,
+                classLoader);
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    /**
+     * Get the target class, null if it is unloaded.
+     */
+    public Class<?> getTarget() {
+        return (Class<?>) references[0].get();
+    }
+
+    /**
+     * Get the class in whose package the proxy class is named and defined,
+     * that is the target unless it is a class of {@code java.*} like the
+     * {@code Object} parent of interface proxies, then the first interface
+     * or type out of {@code java.*}, null if there is none.
+     */
+    public Class<?> getHost() {
+        Class<?> target = getTarget();
+        if (!isJavaClass(target)) {
+            return target;
+        }
+        for (int i = 1; i < references.length - 2; i++) {
+            Class<?> clazz = (Class<?>) references[i].get();
+            if (!isJavaClass(clazz)) {
+                return clazz;
+            }
+        }
+        return null;
+    }
+
+    public Class<?>[] getInterfaces() {
+        return getClasses(1, 1 + interfaceCount);
+    }
+
+    public Class<?>[] getTypes() {
+        return getClasses(1 + interfaceCount, references.length - 2);
+    }
+
+    /**
+     * Whether the key is bound to an object, the name of a bound class is
+     * not derived from the structure only.
+     */
+    public boolean isBound() {
+        return bound;
+    }
+
+    public ClassLoader getClassLoader() {
+        return (ClassLoader) references[references.length - 1].get();
+    }
+
+    /**
+     * Get the text which describes the structure of the key, the class
+     * loader and the binding are excluded.
+     */
+    public String getDescriptor() {
+        String text = descriptor;
+        if (text == null) {
+            StringBuilder builder = new StringBuilder(128);
+            builder.append(kind).append('\n').append(getTarget().getName());
+            builder.append("\ninterfaces:");
+            for (Class<?> clazz : getInterfaces()) {
+                builder.append(clazz.getName()).append(';');
+            }
+            builder.append("\nmethods:");
+            if (methods == null) {
+                builder.append('*');
+            } else {
+                for (String method : methods) {
+                    builder.append(method).append(';');
+                }
+            }
+            builder.append("\ntypes:");
+            for (Class<?> type : getTypes()) {
+                builder.append(type.getName()).append(';');
+            }
+            text = builder.toString();
+            descriptor = text;
+        }
+        return text;
+    }
+
+    /**
+     * Get the internal name of the proxy class like
+     * {@code com/foo/Bar$$Instance$$0123456789abcdef}, it is named after
+     * the {@link #getHost() host}, or {@code proxy.} and the target if
+     * there is no host.
+     */
+    public String getClassName() {
+        String name = className;
+        if (name == null) {
+            Class<?> host = getHost();
+            String originalClassName = host == null
+                    ? "proxy." + getTarget().getName() : host.getName();
+            name = BuilderNameHelper.toResourcePath(originalClassName)
+                    + BaseProxy.LINK_STR + kind + BaseProxy.LINK_STR
+                    + digest(getDescriptor());
+            if (bound) {
+                name += BaseProxy.LINK_STR
+                        + bindingSequence.incrementAndGet();
+            }
+            className = name;
+        }
+        return name;
+    }
+
+    private static boolean isJavaClass(Class<?> clazz) {
+        return clazz != null && clazz.getName().startsWith("java.");
+    }
+
+    private Class<?>[] getClasses(int from, int to) {
+        Class<?>[] classes = new Class<?>[to - from];
+        for (int i = from; i < to; i++) {
+            classes[i - from] = (Class<?>) references[i].get();
+        }
+        return classes;
+    }
+
+    private int reference(int index, Object referent) {
+        references[index] = new WeakReference<>(referent);
+        return System.identityHashCode(referent);
+    }
+
+    /**
+     * Remove the duplicated interfaces by identity and sort them by name,
+     * distinct interfaces of the same name can't be implemented by one
+     * class.
+     */
+    private static Class<?>[] sortInterfaces(Class<?>[] interfaces) {
+        if (interfaces == null || interfaces.length == 0) {
+            return CLASSES_EMPTY;
+        }
+        Set<Class<?>> distinct = new LinkedHashSet<>(Arrays.asList(interfaces));
+        Class<?>[] sorted = distinct.toArray(new Class<?>[distinct.size()]);
+        Arrays.sort(sorted, Comparator.comparing(Class::getName));
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i].getName().equals(sorted[i - 1].getName())) {
+                throw new IllegalArgumentException(
+                        "Distinct interfaces of the same name "
+                                + sorted[i].getName());
+            }
+        }
+        return sorted;
+    }
+
+    private static String[] sortMethods(Method[] methods) {
+        if (methods == null) {
+            return null;
+        }
+        if (methods.length == 0) {
+            return StringHelper.ARRAY_EMPTY;
+        }
+        Set<String> sorted = new TreeSet<>();
+        for (Method method : methods) {
+            sorted.add(Type.getInternalName(method.getDeclaringClass()) + '.'
+                    + method.getName() + Type.getMethodDescriptor(method));
+        }
+        return sorted.toArray(new String[sorted.size()]);
+    }
+
+    private static String digest(String descriptor) {
+        byte[] bytes;
+        try {
+            bytes = MessageDigest.getInstance("SHA-256")
+                    .digest(descriptor.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new SimpleProxyException("Digest proxy key failed", e);
+        }
+        char[] hex = new char[DIGEST_LENGTH];
+        for (int i = 0; i < DIGEST_LENGTH; i++) {
+            int b = bytes[i >> 1];
+            hex[i] = HEX[(i & 1) == 0 ? (b >> 4) & 0xF : b & 0xF];
+        }
+        return new String(hex);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ProxyKey)) {
+            return false;
+        }
+        ProxyKey other = (ProxyKey) obj;
+        if (hash != other.hash || bound != other.bound
+                || references.length != other.references.length
+                || !kind.equals(other.kind)
+                || !Arrays.equals(methods, other.methods)) {
+            return false;
+        }
+        for (int i = 0; i < references.length; i++) {
+            if (references[i].get() != other.references[i].get()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "ProxyKey[" + getDescriptor().replace('\n', ',') + "]";
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * The shape of a proxy class to be prepared by
+ * {@link ProxyHelper#prepare(java.util.Collection)}, which is the same as
+ * the class used by the corresponding method of {@link ProxyHelper}.
+ */
+public final class ProxySpec {
+
+    private final String kind;
+
+    private final Class<?> target;
+
+    private final Method[] methods;
+
+    private final Class<?>[] interfaces;
+
+    private final Class<?> delegateType;
+
+    private ProxySpec(String kind, Class<?> target, Method[] methods,
+            Class<?>[] interfaces, Class<?> delegateType) {
+        if (target == null) {
+            throw new IllegalArgumentException("Invalid parameter " + target);
+        }
+        this.kind = kind;
+        this.target = target;
+        this.methods = methods;
+        this.interfaces = interfaces;
+        this.delegateType = delegateType;
+    }
+
+    /**
+     * The class of {@link InstanceProxy#instance(InvocationHandler, Class)}.
+     */
+    public static ProxySpec instance(Class<?> parent) {
+        return instance(parent, parent.getDeclaredMethods(), null);
+    }
+
+    /**
+     * The class of
+     * {@link InstanceProxy#instanceClass(Class, Method[], Class[])}.
+     */
+    public static ProxySpec instance(Class<?> parent, Method[] overrides,
+            Class<?>[] interfaces) {
+        return new ProxySpec(ProxyKey.KIND_INSTANCE, parent, overrides,
+                interfaces, null);
+    }
+
+    /**
+     * The class of {@link WholeProxy#proxyClass(Class)}.
+     */
+    public static ProxySpec whole(Class<?> target) {
+        return whole(target, null);
+    }
+
+    /**
+     * The class of {@link WholeProxy#proxyFactory(Class, Method[])}.
+     */
+    public static ProxySpec whole(Class<?> target, Method[] methods) {
+        return new ProxySpec(ProxyKey.KIND_WHOLE, target, methods, null, null);
+    }
+
+    /**
+     * The class of {@link WrapProxy#wrapClass(Class, Class)}, the delegate
+     * type is the class of the wrapped instances.
+     */
+    public static ProxySpec wrap(Class<?> target, Class<?> delegateType) {
+        return wrap(target, delegateType, null);
+    }
+
+    /**
+     * The class of {@link WrapProxy#wrapClass(Class, Class, Method[])}.
+     */
+    public static ProxySpec wrap(Class<?> target, Class<?> delegateType,
+            Method[] methods) {
+        if (delegateType == null) {
+            throw new IllegalArgumentException(
+                    "Invalid parameter " + delegateType);
+        }
+        return new ProxySpec(ProxyKey.KIND_WRAP, target, methods, null,
+                delegateType);
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public Class<?> getTarget() {
+        return target;
+    }
+
+    public Method[] getMethods() {
+        return methods;
+    }
+
+    public Class<?>[] getInterfaces() {
+        return interfaces;
+    }
+
+    public Class<?> getDelegateType() {
+        return delegateType;
+    }
+
+    @Override
+    public String toString() {
+        return "ProxySpec[" + kind + "," + target.getName() + ",methods:"
+                + (methods == null ? "*" : Arrays.toString(methods))
+                + (delegateType == null ? "" : "," + delegateType.getName())
+                + "]";
+    }
+
+}
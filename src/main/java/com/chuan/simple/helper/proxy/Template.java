@@ -17,27 +17,26 @@ package com.chuan.simple.helper.proxy;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 
-import com.chuan.simple.helper.clazz.ClassHelper;
+import com.chuan.simple.helper.common.ObjectHelper;
 import com.chuan.simple.helper.exception.SimpleProxyException;
-import com.chuan.simple.helper.field.FieldHelper;
 
 public class Template {
 
+    /** Handler of the class, used by static methods or as default. */
     private static InvocationHandler invocationHandler$TEMPLATE = null;
 
-    public Template() {
-    }
+    /** Handler of the instance, set by the generated constructor. */
+    private InvocationHandler handler$TEMPLATE;
 
-    public static void init$TEMPLATE() {
-        Class<?> thiz = ClassHelper.getCurrentClass(ProxyHelper.getClassLoader());
-        Method[] methods = thiz.getDeclaredMethods();
-        for (Method method : methods) {
-            if (method.getName().indexOf(BaseProxy.PROXY_SUFFIX) >= 0) {
-                String fieldName = FieldHelper.getProxyMethodFieldName(method);
-                FieldHelper.setFieldValue(null, thiz, fieldName, method);
-            }
-        }
+    /** Dispatcher of the original methods, set after class defined. */
+    private static MethodDispatcher dispatcher$TEMPLATE;
+
+    /** Invokers of the dispatched methods by index. */
+    private static MethodInvoker[] invokers$TEMPLATE;
+
+    public Template() {
     }
 
     public static void setInvocationHandler$TEMPLATE(
@@ -49,13 +48,41 @@ public class Template {
         return invocationHandler$TEMPLATE;
     }
 
-    public static Object invoke$TEMPLATE(Object object, Method method,
-            Object... args) {
+    public static void setDispatcher$TEMPLATE(MethodDispatcher dispatcher,
+            int count) {
+        invokers$TEMPLATE = MethodInvokers.of(dispatcher, count);
+        dispatcher$TEMPLATE = dispatcher;
+    }
+
+    public static MethodDispatcher getDispatcher$TEMPLATE() {
+        return dispatcher$TEMPLATE;
+    }
+
+    /**
+     * @param index
+     *            the index of {@code method} in the dispatcher, -1 if it is
+     *            not dispatched
+     */
+    public static Object invoke$TEMPLATE(InvocationHandler handler,
+            Object object, Method method, int index, Object... args) {
         try {
-            if (invocationHandler$TEMPLATE != null) {
-                return invocationHandler$TEMPLATE.invoke(object, method, args);
+            if (handler == null) {
+                handler = invocationHandler$TEMPLATE;
             }
-            if (method == null) {
+            boolean unimplemented = method == null
+                    || Modifier.isAbstract(method.getModifiers());
+            if (handler instanceof MethodInterceptor) {
+                MethodInvoker[] invokers = invokers$TEMPLATE;
+                MethodInvoker invoker = index >= 0 && invokers != null
+                        ? invokers[index]
+                        : MethodInvokers.of(unimplemented ? null : method);
+                return ((MethodInterceptor) handler).intercept(object, method,
+                        args, invoker);
+            }
+            if (handler != null) {
+                return handler.invoke(object, method, args);
+            }
+            if (unimplemented) {
                 throw new SimpleProxyException(
                         "Unimplemented method without handler");
             }
@@ -65,4 +92,106 @@ public class Template {
         }
     }
 
+    public static long invokeLong$TEMPLATE(InvocationHandler handler,
+            Object object, Method method, int index) {
+        if (handler == null) {
+            handler = invocationHandler$TEMPLATE;
+        }
+        if (handler instanceof PrimitiveInterceptor) {
+            try {
+                return ((PrimitiveInterceptor) handler).interceptLong(object,
+                        method, (PrimitiveInvoker) invokers$TEMPLATE[index]);
+            } catch (Throwable e) {
+                throw new SimpleProxyException("Method invoke failed", e);
+            }
+        }
+        return (Long) invoke$TEMPLATE(handler, object, method, index,
+                ObjectHelper.ARRAY_EMPTY);
+    }
+
+    public static double invokeDouble$TEMPLATE(InvocationHandler handler,
+            Object object, Method method, int index) {
+        if (handler == null) {
+            handler = invocationHandler$TEMPLATE;
+        }
+        if (handler instanceof PrimitiveInterceptor) {
+            try {
+                return ((PrimitiveInterceptor) handler).interceptDouble(object,
+                        method, (PrimitiveInvoker) invokers$TEMPLATE[index]);
+            } catch (Throwable e) {
+                throw new SimpleProxyException("Method invoke failed", e);
+            }
+        }
+        return (Double) invoke$TEMPLATE(handler, object, method, index,
+                ObjectHelper.ARRAY_EMPTY);
+    }
+
+    public static int invokeInt$TEMPLATE(InvocationHandler handler,
+            Object object, Method method, int index) {
+        if (handler == null) {
+            handler = invocationHandler$TEMPLATE;
+        }
+        if (handler instanceof PrimitiveInterceptor) {
+            try {
+                return ((PrimitiveInterceptor) handler).interceptInt(object,
+                        method, (PrimitiveInvoker) invokers$TEMPLATE[index]);
+            } catch (Throwable e) {
+                throw new SimpleProxyException("Method invoke failed", e);
+            }
+        }
+        return (Integer) invoke$TEMPLATE(handler, object, method, index,
+                ObjectHelper.ARRAY_EMPTY);
+    }
+
+    public static void invokeVoid$TEMPLATE(InvocationHandler handler,
+            Object object, Method method, int index, long arg) {
+        if (handler == null) {
+            handler = invocationHandler$TEMPLATE;
+        }
+        if (handler instanceof PrimitiveInterceptor) {
+            try {
+                ((PrimitiveInterceptor) handler).interceptVoid(object, method,
+                        arg, (PrimitiveInvoker) invokers$TEMPLATE[index]);
+                return;
+            } catch (Throwable e) {
+                throw new SimpleProxyException("Method invoke failed", e);
+            }
+        }
+        invoke$TEMPLATE(handler, object, method, index, arg);
+    }
+
+    public static void invokeVoid$TEMPLATE(InvocationHandler handler,
+            Object object, Method method, int index, double arg) {
+        if (handler == null) {
+            handler = invocationHandler$TEMPLATE;
+        }
+        if (handler instanceof PrimitiveInterceptor) {
+            try {
+                ((PrimitiveInterceptor) handler).interceptVoid(object, method,
+                        arg, (PrimitiveInvoker) invokers$TEMPLATE[index]);
+                return;
+            } catch (Throwable e) {
+                throw new SimpleProxyException("Method invoke failed", e);
+            }
+        }
+        invoke$TEMPLATE(handler, object, method, index, arg);
+    }
+
+    public static void invokeVoid$TEMPLATE(InvocationHandler handler,
+            Object object, Method method, int index, int arg) {
+        if (handler == null) {
+            handler = invocationHandler$TEMPLATE;
+        }
+        if (handler instanceof PrimitiveInterceptor) {
+            try {
+                ((PrimitiveInterceptor) handler).interceptVoid(object, method,
+                        arg, (PrimitiveInvoker) invokers$TEMPLATE[index]);
+                return;
+            } catch (Throwable e) {
+                throw new SimpleProxyException("Method invoke failed", e);
+            }
+        }
+        invoke$TEMPLATE(handler, object, method, index, arg);
+    }
+
 }
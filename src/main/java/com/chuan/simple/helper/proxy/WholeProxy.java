@@ -16,19 +16,21 @@
 package com.chuan.simple.helper.proxy;
 
 import java.io.IOException;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Predicate;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.InitCodeholder;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 
-import com.chuan.simple.helper.clazz.BuilderNameHelper;
 import com.chuan.simple.helper.exception.SimpleProxyException;
 
 /**
@@ -41,19 +43,75 @@ public class WholeProxy extends BaseProxy {
     private static final Log log = LogFactory.getLog(WholeProxy.class);
 
     /**
+     * Create instance of {@link #proxyClass(Class)} by the constructor without
+     * parameters, whose methods are redirected to {@code handler}.
      * @see #proxyClass(Class, InvocationHandler)
      */
     public Object proxy(Class<?> target, InvocationHandler handler) {
         try {
-            Class<?> clazz = proxyClass(target, handler);
-            if (clazz!=null) 
-            return clazz.newInstance();
+            return proxyFactory(target).newInstance(handler);
         } catch (Exception e) {
             log.error("Whole proxy failed", e);
         }
         return null;
     }
 
+    /**
+     * Create instance of the proxy class by the constructor without
+     * parameters, only the methods accepted by {@code selector} are
+     * redirected to {@code handler}.
+     * @see #proxyClass(Class, Method[], InvocationHandler)
+     */
+    public Object proxy(Class<?> target, InvocationHandler handler,
+            Predicate<Method> selector) {
+        try {
+            return proxyFactory(target, selector).newInstance(handler);
+        } catch (Exception e) {
+            log.error("Whole proxy failed", e);
+        }
+        return null;
+    }
+
+    /**
+     * Get the factory of {@link #proxyClass(Class)}, whose
+     * {@link ProxyFactory#newInstance(InvocationHandler)} invokes the
+     * constructor without parameters.
+     */
+    public ProxyFactory proxyFactory(Class<?> target) {
+        return ProxyFactories.of(proxyClass(target), getClassDefiner());
+    }
+
+    /**
+     * @see #proxyFactory(Class, Method[])
+     */
+    public ProxyFactory proxyFactory(Class<?> target,
+            Predicate<Method> selector) {
+        return proxyFactory(target,
+                selectMethods(getProxiableMethods(target), selector));
+    }
+
+    /**
+     * Get the factory of the proxy class which redirects only
+     * {@code methods} to the handler.
+     * @see #proxyClass(Class, Method[], InvocationHandler)
+     */
+    public ProxyFactory proxyFactory(Class<?> target, Method[] methods) {
+        return ProxyFactories.of(proxyClass(target, methods, null),
+                getClassDefiner());
+    }
+
+    /**
+     * Get the proxy class of {@code target} which is shared by all the
+     * handlers. Each constructor of {@code target} has a counterpart which
+     * takes an additional {@link InvocationHandler} in the end, the instance
+     * created by it redirects methods to the handler. Static methods and
+     * instances created without handler invoke the original methods.
+     * @see #proxyClass(Class, InvocationHandler)
+     */
+    public Class<?> proxyClass(Class<?> target) {
+        return proxyClass(target, null);
+    }
+
     /**
      * Redirect all the methods (contains constructor) declared by class
      * {@code target} to {@code handler}. The original method will be renamed
@@ -62,6 +120,10 @@ public class WholeProxy extends BaseProxy {
      * the class created by this method is not extends class {@code target},such
      * that if there are behaviors based on the class {@code target},the proxy
      * might fail.
+     * <p>
+     * The {@code handler} is bound to the class,such that a class is created
+     * for each handler. Use {@link #proxy(Class, InvocationHandler)} to share
+     * the class between handlers.
      * @param target
      *            the class to be entrusted
      * @param handler
@@ -69,46 +131,79 @@ public class WholeProxy extends BaseProxy {
      * @return the proxy class
      */
     public Class<?> proxyClass(Class<?> target, InvocationHandler handler) {
-        if (Object.class.equals(target)) {
-            throw new SimpleProxyException(
-                    "Class java.lang.Object can't be proxied");
-        }
+        return proxyClass(target, null, handler);
+    }
+
+    /**
+     * Redirect only {@code methods} declared by class {@code target} to
+     * {@code handler}, the other methods keep their original bytecode and
+     * are invoked without the handler. Constructors are always redirected.
+     * @param methods
+     *            the methods to be redirected, null for all the methods.
+     *            The abstract, native and inherited methods will be
+     *            ineffectual.
+     * @see #proxyClass(Class, InvocationHandler)
+     */
+    public Class<?> proxyClass(Class<?> target, Method[] methods,
+            InvocationHandler handler) {
         Class<?> clazz = null;
         try {
-            String className = generateClassName(target, handler);
-            clazz = classCache.get(className);
-            if (clazz==null){
-                byte[] bytes = generateProxyClass(target, className);
-                clazz = defineClass(BuilderNameHelper.toClassName(className),
-                        bytes, 0, bytes.length, null);
-                setHandler(clazz, handler);
-                classCache.put(className, clazz);
-            }
+            clazz = getProxyClass(wholeShape(target, methods, handler));
         } catch (IOException e) {
             log.error("Whole proxy failed", e);
         }
         return clazz;
     }
 
-    private byte[] generateProxyClass(Class<?> target, String className)
-            throws IOException {
+    /**
+     * @see #proxyClass(Class, Method[], InvocationHandler)
+     */
+    protected ProxyShape wholeShape(Class<?> target, Method[] methods,
+            InvocationHandler handler) {
+        if (Object.class.equals(target)) {
+            throw new SimpleProxyException(
+                    "Class java.lang.Object can't be proxied");
+        }
+        Method[] proxied = methods == null ? null
+                : selectMethods(methods,
+                        method -> method.getDeclaringClass() == target
+                                && !Modifier.isAbstract(method.getModifiers())
+                                && !Modifier.isNative(method.getModifiers()));
+        ProxyKey key =
+                ProxyKey.whole(target, proxied, handler, getClassLoader());
+        return new ProxyShape(key,
+                className -> generateProxyClass(target, className, proxied),
+                generated -> setHandler(generated, handler));
+    }
+
+    private ProxyClassWriter generateProxyClass(Class<?> target,
+            String className, Method[] methods) throws IOException {
         String[] interfaces = getInternalNames(target.getInterfaces());
-        ClassWriter writer = new ClassWriter(0);
-        new ClassReader(Template.class.getName()).setClassName(className)
+        ProxyClassWriter writer = new ProxyClassWriter(className, null);
+        templateReader(Template.class).setClassName(className)
                 .setMethodFilter(new BaseProxy.TemplateMethodFilter())
                 .accept(writer, ClassReader.SKIP_DEBUG);
         Map<String, InitCodeholder> initCodeMap = new HashMap<>();
-        ProxyMethodFilter filter =
-                new BaseProxy.ProxyMethodFilter(initCodeMap);
-        new ClassReader(target.getName()).setClassName(className)
+        ProxyMethodFilter filter = methods == null
+                ? new BaseProxy.ProxyMethodFilter(initCodeMap)
+                : new BaseProxy.ProxyMethodFilter(initCodeMap, methods);
+        new ClassReader(readClassBytes(target)).setClassName(className)
                 .setVisitInnerClass(false).setMethodFilter(filter)
                 .accept(writer, ClassReader.SKIP_DEBUG);
         writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, className, null,
                 Type.getInternalName(target.getSuperclass()), interfaces);
-        proxyMethods(writer, target, className);
+        if (methods == null) {
+            proxyMethods(writer, target, className);
+        } else {
+            proxyMethods(writer, methods, className);
+        }
         proxyConstructors(writer, target, className, initCodeMap);
+        for (Constructor<?> constructor : target.getDeclaredConstructors()) {
+            createHandlerConstructor(writer, className,
+                    constructor.getParameterTypes());
+        }
         generalHandling(writer, className, filter.isHasClinit());
-        return writer.toByteArray();
+        return writer;
     }
 
 }
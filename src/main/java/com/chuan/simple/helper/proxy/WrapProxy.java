@@ -20,6 +20,11 @@ import java.lang.reflect.Executable;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -41,83 +46,192 @@ public class WrapProxy extends BaseProxy {
 
 	private static final Log log = LogFactory.getLog(WrapProxy.class);
 
+    /** Sequence of the bound classes whose cached names are taken. */
+    private static final AtomicLong boundSequence = new AtomicLong();
+
 	public WrapProxy() {
 	}
 
-	/**
-	 * @see #wrap(Class, Object, InvocationHandler)
-	 */
-	public Object wrap(Class<?> target, Object instance) {
-		try {
-			Class<?> clazz = wrapClass(target, instance, null);
-			if (clazz != null)
-				return clazz.newInstance();
-		} catch (Exception e) {
-			log.error("Wrap proxy failed", e);
-		}
-		return null;
-	}
+    /**
+     * @see #wrap(Class, Object, InvocationHandler)
+     */
+    public Object wrap(Class<?> target, Object instance) {
+        return wrap(target, instance, null);
+    }
 
     /**
      * Wrap {@code instance} with class {@code target}
+     * @param target
+     *            the target class
+     * @param instance
+     *            the instance will be wrapped
+     * @param handler
+     *            the handler which will be invoked before the invocation of
+     *            instance's methods
      * @return the result match {@code target}
-     * @see #wrapClass(Class, Object, InvocationHandler)
+     * @see #wrapClass(Class, Class)
      */
     public Object wrap(Class<?> target, Object instance,
             InvocationHandler handler) {
         try {
-            Class<?> clazz = wrapClass(target, instance, handler);
-            Object bean = clazz.newInstance();
-            return bean;
+            return wrapFactory(target, instance.getClass())
+                    .newInstance(handler, instance);
         } catch (Exception e) {
             log.error("Wrap proxy failed", e);
         }
         return null;
     }
 
-	/**
-	 * Wrap {@code instance} with class {@code target}
-	 * 
-	 * @param target
-	 *            the target class
-	 * @param instance
-	 *            the instance will be wrapped
-	 * @param handler
-	 *            the handler which will be invoked before the invocation of
-	 *            instance's methods
-	 * @return the class match {@code target}
-	 */
-	public Class<?> wrapClass(Class<?> target, Object instance,
-			InvocationHandler handler) {
-		Class<?> clazz = null;
-		try {
-			String className = generateClassName(target, instance, handler);
-			clazz = classCache.get(className);
-			if (clazz == null) {
-				byte[] bytes = generateWrapClass(target, className, instance);
-				clazz = defineClass(BuilderNameHelper.toClassName(className),
-						bytes, 0, bytes.length, null);
-				setTarget(clazz, instance);
-				setMethodField(clazz, target, instance);
-				setHandler(clazz, handler);
-				classCache.put(className, clazz);
-			}
-		} catch (IOException e) {
-			log.error("Wrap proxy failed", e);
-		}
-		return clazz;
-	}
+    /**
+     * Wrap {@code instance} with class {@code target}, only the methods
+     * accepted by {@code selector} are redirected to {@code handler}.
+     * @see #wrapClass(Class, Class, Method[])
+     */
+    public Object wrap(Class<?> target, Object instance,
+            InvocationHandler handler, Predicate<Method> selector) {
+        try {
+            return wrapFactory(target, instance.getClass(), selector)
+                    .newInstance(handler, instance);
+        } catch (Exception e) {
+            log.error("Wrap proxy failed", e);
+        }
+        return null;
+    }
+
+    /**
+     * Get the factory of {@link #wrapClass(Class, Class)}, whose
+     * {@link ProxyFactory#newInstance(InvocationHandler, Object)} takes the
+     * wrapped instance as target.
+     */
+    public ProxyFactory wrapFactory(Class<?> target, Class<?> delegateType) {
+        return ProxyFactories.of(wrapClass(target, delegateType),
+                getClassDefiner());
+    }
+
+    /**
+     * @see #wrapFactory(Class, Class, Method[])
+     */
+    public ProxyFactory wrapFactory(Class<?> target, Class<?> delegateType,
+            Predicate<Method> selector) {
+        return wrapFactory(target, delegateType,
+                selectMethods(target.getMethods(), selector));
+    }
+
+    /**
+     * Get the factory of {@link #wrapClass(Class, Class, Method[])}.
+     */
+    public ProxyFactory wrapFactory(Class<?> target, Class<?> delegateType,
+            Method[] methods) {
+        return ProxyFactories.of(wrapClass(target, delegateType, methods),
+                getClassDefiner());
+    }
+
+    /**
+     * Get the class of wrapping {@code instance} with {@code handler}, whose
+     * constructor without parameters creates the proxy of them. The class
+     * extends {@link #wrapClass(Class, Class)} and is cached by the name of
+     * {@link #generateClassName(Class, Object...)} until {@link #clear()},
+     * the wrapped instance can be replaced by
+     * {@link #setTarget(Class, Object)}.
+     * @deprecated a class is defined for each wrapped instance, use
+     *             {@link #wrap(Class, Object, InvocationHandler)} or
+     *             {@link #wrapFactory(Class, Class)} instead.
+     */
+    @Deprecated
+    public Class<?> wrapClass(Class<?> target, Object instance,
+            InvocationHandler handler) {
+        Class<?> shared = wrapClass(target, instance.getClass());
+        if (shared == null) {
+            return null;
+        }
+        String cacheName = generateClassName(target, instance, handler);
+        synchronized (classCache) {
+            Class<?> clazz = classCache.get(cacheName);
+            if (clazz != null && isBound(clazz, instance, handler)) {
+                return clazz;
+            }
+            String className = clazz == null ? cacheName
+                    : cacheName + LINK_STR + boundSequence.incrementAndGet();
+            clazz = defineClass(shared, BuilderNameHelper.toClassName(
+                    className), generateBoundClass(className, shared,
+                            instance.getClass()));
+            if (clazz != null) {
+                setTarget(clazz, instance);
+                FieldHelper.setFieldValue(null, clazz, CLASS_HANDLER_FIELD,
+                        handler);
+                classCache.put(cacheName, clazz);
+            }
+            return clazz;
+        }
+    }
+
+    /**
+     * Get the class which extends {@code target} and delegates to instances
+     * of {@code delegateType}. The class is shared by all the wrapped
+     * instances of {@code delegateType}, the wrapped instance and the handler
+     * are held by each proxy instance, which are passed to the constructor
+     * like {@code (delegateType instance, InvocationHandler handler)}.
+     * @param target
+     *            the target class
+     * @param delegateType
+     *            the class of the instances will be wrapped
+     * @return the class match {@code target}
+     */
+    public Class<?> wrapClass(Class<?> target, Class<?> delegateType) {
+        return wrapClass(target, delegateType, (Method[]) null);
+    }
+
+    /**
+     * Get the class like {@link #wrapClass(Class, Class)} which redirects
+     * only {@code methods} to the handler. The other methods invoke the
+     * wrapped instance directly, unless the delegate has no public
+     * counterpart of them.
+     * @param methods
+     *            the public methods of {@code target} to be redirected,
+     *            null for all the methods
+     */
+    public Class<?> wrapClass(Class<?> target, Class<?> delegateType,
+            Method[] methods) {
+        Class<?> clazz = null;
+        try {
+            clazz = getProxyClass(wrapShape(target, delegateType, methods));
+        } catch (IOException e) {
+            log.error("Wrap proxy failed", e);
+        }
+        return clazz;
+    }
+
+    /**
+     * @see #wrapClass(Class, Class, Method[])
+     */
+    protected ProxyShape wrapShape(Class<?> target, Class<?> delegateType,
+            Method[] methods) {
+        Set<Method> selected =
+                methods == null ? null : new HashSet<>(Arrays.asList(methods));
+        ProxyKey key =
+                ProxyKey.wrap(target, delegateType, methods, getClassLoader());
+        return new ProxyShape(key,
+                className -> generateWrapClass(target, className,
+                        delegateType, selected),
+                generated -> setMethodField(generated, target, delegateType,
+                        selected));
+    }
 
     public void setMethodField(Class<?> proxy, Class<?> target,
-            Object instance) {
+            Class<?> delegateType) {
+        setMethodField(proxy, target, delegateType, null);
+    }
+
+    private void setMethodField(Class<?> proxy, Class<?> target,
+            Class<?> delegateType, Set<Method> selected) {
         for (Method method : target.getMethods()) {
-            if (Modifier.isFinal(method.getModifiers())) {
+            if (Modifier.isFinal(method.getModifiers())
+                    || !isRedirected(method, delegateType, selected)) {
                 continue;
             }
             String fieldName = getMethodFieldName(method, StringHelper.EMPTY);
-            if (!method.getDeclaringClass().isInstance(instance)) {
-                method = MethodHelper.findSameMethod(method,
-                        instance.getClass());
+            if (!method.getDeclaringClass().isAssignableFrom(delegateType)) {
+                method = MethodHelper.findSameMethod(method, delegateType);
             }
             FieldHelper.setFieldValue(null, proxy, fieldName, method);
         }
@@ -142,10 +256,40 @@ public class WrapProxy extends BaseProxy {
         MethodVisitor methodVisitor =
                 writer.visitMethod(modifiers, method.getName(),
                         Type.getMethodDescriptor(method), null, exceptions);
-        methodVisitor.visitMaxs(4, size + 3);
+        methodVisitor.visitMaxs(Math.max(size, 6), size + 3);
         createMethodField(writer, method, StringHelper.EMPTY);
-        proxyExecutable(method, methodVisitor, className, size, instance);
-        methodCastReturn(method, methodVisitor);
+        proxyMethodBody(method, methodVisitor, className, size, instance,
+                dispatchIndex(writer, method, instance));
+    }
+
+    /**
+     * Invoke the counterpart of {@code method} on the wrapped instance
+     * directly, the handler is never involved.
+     */
+    public void delegateMethod(ClassWriter writer, Method method,
+            String className, Object instance) {
+        Type type = Type.getType(method);
+        int size = type.getArgumentsAndReturnSizes() >> 2;
+        int modifiers = method.getModifiers() & ~Opcodes.ACC_ABSTRACT
+                & ~Opcodes.ACC_NATIVE;
+        MethodVisitor methodVisitor = writer.visitMethod(modifiers,
+                method.getName(), type.getDescriptor(), null,
+                getExceptionsDesc(method));
+        methodVisitor.visitMaxs(Math.max(size, type.getReturnType().getSize()),
+                size);
+        invokeOriginal(method, methodVisitor, className, instance);
+        methodReturn(method, methodVisitor);
+        methodVisitor.visitEnd();
+    }
+
+    /**
+     * Whether {@code method} is redirected to the handler, the unselected
+     * methods which can't be delegated directly are redirected as well.
+     */
+    private boolean isRedirected(Method method, Class<?> delegateType,
+            Set<Method> selected) {
+        return selected == null || selected.contains(method)
+                || !hasOriginal(method, delegateType);
     }
 
     @Override
@@ -154,9 +298,91 @@ public class WrapProxy extends BaseProxy {
         if (isStatic) {
             methodVisitor.visitInsn(Opcodes.ACONST_NULL);
         } else {
-            methodVisitor.visitFieldInsn(Opcodes.GETSTATIC, className,
-                    WRAPPER_TARGET, Type.getDescriptor(instance.getClass()));
+            methodVisitor.visitVarInsn(Opcodes.ALOAD, 0);
+            methodVisitor.visitFieldInsn(Opcodes.GETFIELD, className,
+                    WRAPPER_TARGET, Type.getDescriptor((Class<?>) instance));
+        }
+    }
+
+    /**
+     * The original of the wrapped method is the public method of the
+     * delegate, which is invoked directly if the delegate is public.
+     */
+    @Override
+    protected boolean hasOriginal(Method method, Object instance) {
+        return findDelegateMethod(method, (Class<?>) instance) != null;
+    }
+
+    @Override
+    protected void invokeOriginal(Method method, MethodVisitor methodVisitor,
+            String className, Object instance) {
+        Class<?> delegateType = (Class<?>) instance;
+        Method delegateMethod = findDelegateMethod(method, delegateType);
+        boolean isStatic = Modifier.isStatic(delegateMethod.getModifiers());
+        if (!isStatic) {
+            aloadOwner(methodVisitor, false, delegateType, className);
+        }
+        loadArguments(method, methodVisitor, isStatic ? 0 : 1);
+        invokeDelegate(delegateMethod, methodVisitor, delegateType);
+    }
+
+    /**
+     * The target passed to the dispatcher is the wrapped instance.
+     */
+    @Override
+    protected void dispatchOriginal(Method method,
+            MethodVisitor methodVisitor, String className, Object instance,
+            boolean boxed) {
+        Class<?> delegateType = (Class<?>) instance;
+        Method delegateMethod = findDelegateMethod(method, delegateType);
+        if (!Modifier.isStatic(delegateMethod.getModifiers())) {
+            methodVisitor.visitVarInsn(Opcodes.ALOAD, 2);
+            methodVisitor.visitTypeInsn(Opcodes.CHECKCAST,
+                    Type.getInternalName(delegateType));
+        }
+        dispatchArguments(method, methodVisitor, boxed);
+        invokeDelegate(delegateMethod, methodVisitor, delegateType);
+    }
+
+    private void invokeDelegate(Method delegateMethod,
+            MethodVisitor methodVisitor, Class<?> delegateType) {
+        if (Modifier.isStatic(delegateMethod.getModifiers())) {
+            methodVisitor.visitMethodInsn(Opcodes.INVOKESTATIC,
+                    Type.getInternalName(delegateMethod.getDeclaringClass()),
+                    delegateMethod.getName(),
+                    Type.getMethodDescriptor(delegateMethod), false);
+            return;
+        }
+        methodVisitor.visitMethodInsn(
+                delegateType.isInterface() ? Opcodes.INVOKEINTERFACE
+                        : Opcodes.INVOKEVIRTUAL,
+                Type.getInternalName(delegateType), delegateMethod.getName(),
+                Type.getMethodDescriptor(delegateMethod),
+                delegateType.isInterface());
+    }
+
+    private Method findDelegateMethod(Method method, Class<?> delegateType) {
+        if (!Modifier.isPublic(delegateType.getModifiers())) {
+            return null;
+        }
+        Method delegateMethod = method;
+        if (!method.getDeclaringClass().isAssignableFrom(delegateType)) {
+            delegateMethod = MethodHelper.findSameMethod(method, delegateType);
         }
+        if (delegateMethod == null
+                || !Modifier.isPublic(delegateMethod.getModifiers())
+                || Modifier.isStatic(method.getModifiers()) != Modifier
+                        .isStatic(delegateMethod.getModifiers())
+                || !method.getReturnType()
+                        .isAssignableFrom(delegateMethod.getReturnType())) {
+            return null;
+        }
+        if (Modifier.isStatic(delegateMethod.getModifiers())
+                && !Modifier.isPublic(delegateMethod.getDeclaringClass()
+                        .getModifiers())) {
+            return null;
+        }
+        return delegateMethod;
     }
 
     @Override
@@ -167,21 +393,98 @@ public class WrapProxy extends BaseProxy {
                 Type.getDescriptor(Method.class));
     }
 
-    private byte[] generateWrapClass(Class<?> target, String className,
-        	Object instance) throws IOException {
-        ClassWriter writer = new ClassWriter(0);
-        new ClassReader(Template.class.getName()).setClassName(className)
-        		.setMethodFilter(new BaseProxy.TemplateMethodFilter())
-        		.accept(writer, ClassReader.SKIP_DEBUG);
+    private ProxyClassWriter generateWrapClass(Class<?> target,
+            String className, Class<?> delegateType, Set<Method> selected)
+            throws IOException {
+        ProxyClassWriter writer = new ProxyClassWriter(className, delegateType);
+        templateReader(Template.class).setClassName(className)
+                .setMethodFilter(new BaseProxy.TemplateMethodFilter())
+                .accept(writer, ClassReader.SKIP_DEBUG);
         writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, className, null,
-        		Type.getInternalName(target), StringHelper.ARRAY_EMPTY);
-        writer.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC,
-        		WRAPPER_TARGET, Type.getDescriptor(instance.getClass()), null,
-        		null);
-        modifyConstructor(writer, target, className);
-        wrapMethods(writer, target.getMethods(), className, instance);
+                Type.getInternalName(target), StringHelper.ARRAY_EMPTY);
+        writer.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL,
+                WRAPPER_TARGET, Type.getDescriptor(delegateType), null, null);
+        createWrapConstructor(writer, target, className, delegateType);
+        createHandlerConstructor(writer, className,
+                new Class<?>[] { delegateType });
+        for (Method method : target.getMethods()) {
+            if (isRedirected(method, delegateType, selected)) {
+                wrapMethod(writer, method, className, delegateType);
+            } else if (!Modifier.isFinal(method.getModifiers())) {
+                delegateMethod(writer, method, className, delegateType);
+            }
+        }
         generalHandling(writer, className, false);
+        return writer;
+    }
+
+    /**
+     * Whether the class got by
+     * {@link #wrapClass(Class, Object, InvocationHandler)} still wraps
+     * {@code instance} with {@code handler}.
+     */
+    private static boolean isBound(Class<?> clazz, Object instance,
+            InvocationHandler handler) {
+        try {
+            return clazz.getDeclaredField(WRAPPER_TARGET).get(null) == instance
+                    && clazz.getDeclaredField(CLASS_HANDLER_FIELD)
+                            .get(null) == handler;
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Generate the subclass of {@code shared} whose constructor without
+     * parameters passes its static fields {@link #WRAPPER_TARGET} and
+     * {@link #CLASS_HANDLER_FIELD} to the constructor of {@code shared}.
+     */
+    private byte[] generateBoundClass(String className, Class<?> shared,
+            Class<?> delegateType) {
+        String superName = Type.getInternalName(shared);
+        String targetDesc = Type.getDescriptor(delegateType);
+        String handlerDesc = Type.getDescriptor(InvocationHandler.class);
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER,
+                className, null, superName, StringHelper.ARRAY_EMPTY);
+        writer.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC,
+                WRAPPER_TARGET, targetDesc, null, null);
+        writer.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC,
+                CLASS_HANDLER_FIELD, handlerDesc, null, null);
+        MethodVisitor methodVisitor = writer.visitMethod(Opcodes.ACC_PUBLIC,
+                CONSTRUCTOR_NAME, VOID_METHOD_NAME, null,
+                StringHelper.ARRAY_EMPTY);
+        methodVisitor.visitMaxs(3, 1);
+        methodVisitor.visitVarInsn(Opcodes.ALOAD, 0);
+        methodVisitor.visitFieldInsn(Opcodes.GETSTATIC, className,
+                WRAPPER_TARGET, targetDesc);
+        methodVisitor.visitFieldInsn(Opcodes.GETSTATIC, className,
+                CLASS_HANDLER_FIELD, handlerDesc);
+        methodVisitor.visitMethodInsn(Opcodes.INVOKESPECIAL, superName,
+                CONSTRUCTOR_NAME, "(" + targetDesc + handlerDesc + ")V", false);
+        methodVisitor.visitInsn(Opcodes.RETURN);
+        methodVisitor.visitEnd();
+        writer.visitEnd();
         return writer.toByteArray();
     }
 
+    private void createWrapConstructor(ClassWriter writer, Class<?> target,
+            String className, Class<?> delegateType) {
+        String delegateDesc = Type.getDescriptor(delegateType);
+        MethodVisitor methodVisitor = writer.visitMethod(Opcodes.ACC_PUBLIC,
+                CONSTRUCTOR_NAME, "(" + delegateDesc + ")V", null,
+                StringHelper.ARRAY_EMPTY);
+        methodVisitor.visitMaxs(2, 2);
+        methodVisitor.visitVarInsn(Opcodes.ALOAD, 0);
+        methodVisitor.visitMethodInsn(Opcodes.INVOKESPECIAL,
+                Type.getInternalName(target), CONSTRUCTOR_NAME,
+                VOID_METHOD_NAME, false);
+        methodVisitor.visitVarInsn(Opcodes.ALOAD, 0);
+        methodVisitor.visitVarInsn(Opcodes.ALOAD, 1);
+        methodVisitor.visitFieldInsn(Opcodes.PUTFIELD, className,
+                WRAPPER_TARGET, delegateDesc);
+        methodVisitor.visitInsn(Opcodes.RETURN);
+        methodVisitor.visitEnd();
+    }
+
 }
@@ -22,13 +22,25 @@ import java.io.InputStream;
 public final class StreamHelper {
 
     public static String toString(InputStream in) throws IOException {
+        return read(in).toString();
+    }
+
+    /**
+     * Read all the bytes of {@code in}, which is not closed.
+     */
+    public static byte[] toByteArray(InputStream in) throws IOException {
+        return read(in).toByteArray();
+    }
+
+    private static ByteArrayOutputStream read(InputStream in)
+            throws IOException {
         ByteArrayOutputStream result = new ByteArrayOutputStream();
         byte[] buffer = new byte[1024];
         int length;
         while ((length = in.read(buffer)) != -1) {
             result.write(buffer, 0, length);
         }
-        return result.toString();
+        return result;
     }
 
     private StreamHelper() {
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.expression;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ExpressionHelperTest {
+
+    private final Map<String, Object> properties = new HashMap<>();
+
+    @Test
+    public void resolvesInBulkInOrder() {
+        properties.put("k", "v");
+        String[] texts = new String[2000];
+        String[] expected = new String[texts.length];
+        for (int i = 0; i < texts.length; i++) {
+            texts[i] = i + "${k}";
+            expected[i] = i + "v";
+        }
+        assertArrayEquals(expected,
+                ExpressionHelper.resolvePlaceholders(texts, properties, 0));
+        assertArrayEquals(expected,
+                ExpressionHelper.resolvePlaceholders(texts, properties));
+        List<String> result = ExpressionHelper
+                .resolvePlaceholders(Arrays.asList(texts), properties);
+        assertEquals(Arrays.asList(expected), result);
+        result.add("mutable");
+    }
+
+    @Test
+    public void resolvesOnceWhileExpandingRecursively() {
+        properties.put("a", "${b}");
+        properties.put("b", "1");
+        properties.put("empty", "");
+        assertEquals("${b}",
+                ExpressionHelper.resolvePlaceholders("${a}", properties));
+        assertEquals("1",
+                ExpressionHelper.expandPlaceholders("${a}", properties));
+        assertEquals("[${empty}]",
+                ExpressionHelper.resolvePlaceholders("[${empty}]", properties));
+        assertEquals("[]",
+                ExpressionHelper.expandPlaceholders("[${empty}]", properties));
+        assertEquals("${c:2}",
+                ExpressionHelper.resolvePlaceholders("${c:2}", properties));
+        assertEquals("2",
+                ExpressionHelper.expandPlaceholders("${c:2}", properties));
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.expression;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.chuan.simple.helper.expression.math.MathExpressionHelper;
+
+public class ExpressionTemplateTest {
+
+    private final Map<String, Object> properties = new HashMap<>();
+
+    {
+        properties.put("a", "2");
+        properties.put("b", "3");
+        properties.put("op", "*");
+        properties.put("key", "b");
+        properties.put("unit", "px");
+        properties.put("empty", "");
+    }
+
+    @Test
+    public void rendersLikeResolveThenParse() {
+        String[] texts = { "1+2", "${a}+${b}", "${a}${op}${b} px",
+                "${a}*(${b}+1)${unit} and 4-${a}${unit}", "${${key}}*2",
+                "(${a}+1)*${b}=${missing}", "10/${a}${empty}" };
+        for (String text : texts) {
+            assertEquals(text, pipeline(text),
+                    ExpressionTemplate.compile(text).render(properties));
+        }
+    }
+
+    @Test
+    public void keepsTextBeforeFirstMath() {
+        String text = "width: ${a}*${b}${unit}";
+        assertEquals("6px", pipeline(text));
+        assertEquals("width: 6px",
+                ExpressionTemplate.compile(text).render(properties));
+    }
+
+    @Test
+    public void keepsTextWithoutMath() {
+        String text = "size ${unit}";
+        assertEquals("", pipeline(text));
+        assertEquals("size px",
+                ExpressionTemplate.compile(text).render(properties));
+    }
+
+    private String pipeline(String text) {
+        return MathExpressionHelper.parseComplexExpression(
+                ExpressionHelper.resolvePlaceholders(text, properties))
+                .toString();
+    }
+
+}
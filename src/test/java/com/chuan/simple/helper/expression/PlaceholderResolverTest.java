@@ -0,0 +1,155 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.expression;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.chuan.simple.helper.exception.SimpleHelperException;
+
+public class PlaceholderResolverTest {
+
+    private final Map<String, Object> properties = new HashMap<>();
+
+    @Test
+    public void expandsNestedValuesAndKeys() {
+        properties.put("host", "localhost");
+        properties.put("url", "http://${host}:${port}");
+        properties.put("port", "8080");
+        properties.put("env", "dev");
+        properties.put("db.dev", "${url}/dev");
+        PlaceholderResolver resolver = new PlaceholderResolver(properties);
+        assertEquals("db=http://localhost:8080/dev",
+                resolver.resolve("db=${db.${env}}"));
+        assertEquals("http://localhost:8080", resolver.getValue("url"));
+    }
+
+    @Test
+    public void usesDefaultOnlyWithoutValue() {
+        properties.put("name", "x");
+        properties.put("fallback", "y");
+        PlaceholderResolver resolver = new PlaceholderResolver(properties);
+        assertEquals("x", resolver.resolve("${name:z}"));
+        assertEquals("z", resolver.resolve("${missing:z}"));
+        assertEquals("y", resolver.resolve("${missing:${fallback}}"));
+        assertEquals("", resolver.resolve("${missing:}"));
+        assertEquals("${missing}", resolver.resolve("${missing}"));
+        assertNull(resolver.getValue("missing"));
+    }
+
+    @Test
+    public void reportsCircularReferenceWithPath() {
+        properties.put("a", "${b}");
+        properties.put("b", "${c}");
+        properties.put("c", "${a}");
+        PlaceholderResolver resolver = new PlaceholderResolver(properties);
+        try {
+            resolver.resolve("x${a}");
+            fail();
+        } catch (SimpleHelperException e) {
+            assertTrue(e.getMessage(),
+                    e.getMessage().contains("a -> b -> c -> a"));
+        }
+    }
+
+    @Test
+    public void reportsSelfReference() {
+        properties.put("a", "${a}");
+        try {
+            new PlaceholderResolver(properties).resolve("${a}");
+            fail();
+        } catch (SimpleHelperException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("a -> a"));
+        }
+    }
+
+    @Test
+    public void expandsEachKeyOnce() {
+        AtomicInteger lookups = new AtomicInteger();
+        properties.put("a", "${b}${b}");
+        properties.put("b", "1");
+        PlaceholderResolver resolver = new PlaceholderResolver(key -> {
+            lookups.incrementAndGet();
+            return properties.get(key);
+        });
+        assertEquals("11-11", resolver.resolve("${a}-${a}"));
+        assertEquals(2, lookups.get());
+        resolver.clear();
+        assertEquals("11", resolver.resolve("${a}"));
+        assertEquals(4, lookups.get());
+    }
+
+    @Test
+    public void resolvesInBulkInOrder() {
+        properties.put("k", "v");
+        String[] texts = new String[2000];
+        String[] expected = new String[texts.length];
+        for (int i = 0; i < texts.length; i++) {
+            texts[i] = i + "${k}";
+            expected[i] = i + "v";
+        }
+        PlaceholderResolver resolver = new PlaceholderResolver(properties);
+        resolver.setParallelThreshold(10);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertArrayEquals(expected, resolver.resolve(texts, pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void resolvesInParallelOnlyAboveThreshold() {
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        PlaceholderResolver resolver = new PlaceholderResolver(key -> {
+            threads.add(Thread.currentThread());
+            return key;
+        });
+        resolver.setParallelThreshold(3);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertArrayEquals(new String[] { "a", "b", "c" },
+                    resolver.resolve(new String[] { "${a}", "${b}", "${c}" },
+                            pool));
+            assertEquals(Collections.singleton(Thread.currentThread()),
+                    threads);
+            threads.clear();
+            assertArrayEquals(new String[] { "d", "e", "f", "g" },
+                    resolver.resolve(
+                            new String[] { "${d}", "${e}", "${f}", "${g}" },
+                            pool));
+            assertFalse(threads.contains(Thread.currentThread()));
+            assertFalse(threads.isEmpty());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+}
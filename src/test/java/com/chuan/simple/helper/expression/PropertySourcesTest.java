@@ -0,0 +1,100 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.expression;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class PropertySourcesTest {
+
+    private static Map<String, Object> map(Object... keyValues) {
+        Map<String, Object> map = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            map.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return map;
+    }
+
+    @Test
+    public void formerSourceTakesPrecedence() {
+        PropertySource first = new PropertySource("first", map("a", "1"));
+        PropertySources sources = new PropertySources(first,
+                new PropertySource("second", map("a", "2", "b", "3")));
+        assertEquals("1", sources.getProperty("a"));
+        assertEquals("3", sources.getProperty("b"));
+        assertSame(first, sources.getPropertySource("a"));
+        assertFalse(sources.containsProperty("c"));
+    }
+
+    @Test
+    public void addFirstInvalidatesMemoizedKeys() {
+        PropertySources sources = new PropertySources(
+                new PropertySource("base", map("a", "1")));
+        assertEquals("1", sources.getProperty("a"));
+        sources.addFirst(new PropertySource("override", map("a", "2")));
+        assertEquals("2", sources.getProperty("a"));
+    }
+
+    @Test
+    public void replacingSameNamedSourceInvalidatesItsKeys() {
+        PropertySources sources = new PropertySources(
+                new PropertySource("app", map("a", "1", "b", "2")));
+        assertEquals("2", sources.getProperty("b"));
+        sources.addFirst(new PropertySource("app", map("a", "3")));
+        assertEquals("3", sources.getProperty("a"));
+        assertNull(sources.getProperty("b"));
+        sources.addLast(new PropertySource("app", map("c", "4")));
+        assertNull(sources.getProperty("a"));
+        assertEquals("4", sources.getProperty("c"));
+        assertEquals(1, sources.getSources().size());
+    }
+
+    @Test
+    public void removeAndReplaceInvalidateKeys() {
+        PropertySources sources = new PropertySources(
+                new PropertySource("first", map("a", "1")),
+                new PropertySource("second", map("a", "2")));
+        assertEquals("1", sources.getProperty("a"));
+        sources.remove("first");
+        assertEquals("2", sources.getProperty("a"));
+        assertTrue(sources.replace("second", map("b", "5")));
+        assertNull(sources.getProperty("a"));
+        assertEquals("5", sources.getProperty("b"));
+        assertFalse(sources.replace("missing", map()));
+    }
+
+    @Test
+    public void reloadInvalidatesOldAndNewKeys() {
+        Map<String, Object> backing = map("a", "1");
+        PropertySources sources = new PropertySources(
+                new PropertySource("loaded", () -> new HashMap<>(backing)));
+        assertEquals("1", sources.getProperty("a"));
+        backing.clear();
+        backing.put("b", "2");
+        assertTrue(sources.reload("loaded"));
+        assertNull(sources.getProperty("a"));
+        assertEquals("2", sources.getProperty("b"));
+    }
+
+}
@@ -0,0 +1,426 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class BaseProxyTest {
+
+    private static final int THREADS = 64;
+
+    public static class Cold {
+
+        public String name() {
+            return "cold";
+        }
+
+    }
+
+    public static class Failing {
+
+        public String name() {
+            return "failing";
+        }
+
+    }
+
+    public static class Broken {
+
+        public String name() {
+            return "broken";
+        }
+
+    }
+
+    public static class Cached {
+
+        public int size() {
+            return 1;
+        }
+
+    }
+
+    public static class Isolated {
+
+        public String name() {
+            return "isolated";
+        }
+
+    }
+
+    public interface Sized {
+
+        int size();
+
+    }
+
+    public static class Initialized {
+
+        public static String state;
+
+        static {
+            state = "initialized";
+        }
+
+        public Initialized() {
+        }
+
+        public Initialized(String name, int[] values) {
+        }
+
+        public String name() {
+            return "name";
+        }
+
+        public String name(String prefix) {
+            return prefix + name();
+        }
+
+        public long[] values(Object[] values) {
+            return new long[values.length];
+        }
+
+        public static int count() {
+            return 0;
+        }
+
+    }
+
+    /**
+     * The class loader which defines classes by itself, such that the
+     * proxies are defined without {@code --add-opens}.
+     */
+    private static class DefiningLoader extends ClassLoader {
+
+        private static final ClassDefiner DEFINER =
+                (classLoader, host, name, bytes) -> ((DefiningLoader)
+                        classLoader).defineClass(name, bytes, 0, bytes.length);
+
+        private DefiningLoader() {
+            super(BaseProxyTest.class.getClassLoader());
+        }
+
+    }
+
+    /**
+     * Counts the definitions of the proxy classes of {@code parent}, the
+     * first one fails after {@code failDelay} if it is not negative.
+     */
+    private static class CountingDefiner implements ClassDefiner {
+
+        private final String prefix;
+
+        private final long failDelay;
+
+        private final long defineDelay;
+
+        private final AtomicInteger attempts = new AtomicInteger();
+
+        private final AtomicInteger defined = new AtomicInteger();
+
+        private final AtomicInteger linkageErrors = new AtomicInteger();
+
+        private CountingDefiner(Class<?> parent, long failDelay,
+                long defineDelay) {
+            this.prefix = parent.getName() + BaseProxy.LINK_STR;
+            this.failDelay = failDelay;
+            this.defineDelay = defineDelay;
+        }
+
+        @Override
+        public Class<?> define(ClassLoader classLoader, Class<?> host,
+                String name, byte[] bytes) throws Exception {
+            boolean proxyClass = name.startsWith(prefix)
+                    && !name.endsWith(BaseProxy.DISPATCHER_SUFFIX)
+                    && !name.endsWith(ProxyFactories.FACTORY_SUFFIX);
+            if (proxyClass) {
+                if (attempts.getAndIncrement() == 0 && failDelay >= 0) {
+                    Thread.sleep(failDelay);
+                    throw new IllegalStateException("Injected failure");
+                }
+                Thread.sleep(defineDelay);
+            }
+            try {
+                Class<?> clazz = ClassDefiners.getDefault().define(classLoader,
+                        host, name, bytes);
+                if (proxyClass) {
+                    defined.incrementAndGet();
+                }
+                return clazz;
+            } catch (LinkageError e) {
+                linkageErrors.incrementAndGet();
+                throw e;
+            }
+        }
+
+    }
+
+    @Test
+    public void coldCacheIsGeneratedOnce() throws Exception {
+        CountingDefiner definer = new CountingDefiner(Cold.class, -1, 20);
+        List<Class<?>> classes = race(Cold.class, definer, 0);
+        Class<?> proxyClass = classes.get(0);
+        assertNotNull(proxyClass);
+        for (Class<?> clazz : classes) {
+            assertSame(proxyClass, clazz);
+        }
+        assertEquals(1, definer.defined.get());
+        assertEquals(0, definer.linkageErrors.get());
+    }
+
+    @Test
+    public void failedGenerationIsRetriedOnce() throws Exception {
+        CountingDefiner definer = new CountingDefiner(Failing.class, 200, 300);
+        List<Class<?>> classes = race(Failing.class, definer, 250);
+        Class<?> proxyClass = null;
+        int failed = 0;
+        for (Class<?> clazz : classes) {
+            if (clazz == null) {
+                failed++;
+            } else if (proxyClass == null) {
+                proxyClass = clazz;
+            } else {
+                assertSame(proxyClass, clazz);
+            }
+        }
+        assertEquals(1, failed);
+        assertNotNull(proxyClass);
+        assertEquals(1, definer.defined.get());
+        assertEquals(0, definer.linkageErrors.get());
+        assertTrue(generatingLocks().isEmpty());
+    }
+
+    @Test
+    public void failingKeyLeavesNoLock() throws Exception {
+        String prefix = Broken.class.getName() + BaseProxy.LINK_STR;
+        AtomicInteger attempts = new AtomicInteger();
+        InstanceProxy proxy = new InstanceProxy();
+        proxy.setClassDefiner((classLoader, host, name, bytes) -> {
+            if (name.startsWith(prefix)) {
+                attempts.incrementAndGet();
+                throw new IllegalStateException("Injected failure");
+            }
+            return ClassDefiners.getDefault().define(classLoader, host, name,
+                    bytes);
+        });
+        Method[] overrides = { Broken.class.getMethod("name") };
+        for (int i = 0; i < 3; i++) {
+            assertNull(proxy.instanceClass(Broken.class, overrides, null));
+            assertTrue(generatingLocks().isEmpty());
+        }
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    public void brokenCacheEntryIsCompleted() throws Exception {
+        Path directory = Files.createTempDirectory("proxy-cache");
+        ProxyClassCache classFileCache = new ProxyClassCache(directory);
+        Method[] overrides = { Cached.class.getMethod("size") };
+        InstanceProxy writing = cachingProxy(classFileCache);
+        writing.instanceClass(Cached.class, overrides, null);
+        ProxyKey key = ProxyKey.instance(Cached.class, overrides, null,
+                writing.getClassLoader());
+        Map<String, byte[]> classes = classFileCache.read(key);
+        String dispatcherName = key.getClassName() + BaseProxy.LINK_STR
+                + BaseProxy.DISPATCHER_SUFFIX;
+        assertNotNull(classes.get(dispatcherName));
+        classes.put(dispatcherName, new byte[] { 1, 2, 3 });
+        classFileCache.write(key, classes);
+
+        InstanceProxy reading = cachingProxy(classFileCache);
+        Class<?> proxyClass =
+                reading.instanceClass(Cached.class, overrides, null);
+        assertNotNull(proxyClass);
+        assertSame(reading.getClassLoader(), proxyClass.getClassLoader());
+        MethodInterceptor twice =
+                (proxy, method, args, invoker) -> 2 * (Integer) invoker
+                        .invoke(proxy, args);
+        Cached cached = (Cached) ProxyFactories.of(proxyClass,
+                DefiningLoader.DEFINER).newInstance(twice);
+        assertEquals(2, cached.size());
+        assertTrue(classFileCache.read(key).get(dispatcherName).length > 3);
+    }
+
+    @Test
+    public void classCachesAreIsolatedPerClassLoader() throws Exception {
+        InstanceProxy first = definingProxy();
+        InstanceProxy second = definingProxy();
+        Class<?> firstClass = first.instanceClass(Isolated.class, null, null);
+        Class<?> secondClass =
+                second.instanceClass(Isolated.class, null, null);
+        assertNotSame(firstClass, secondClass);
+        assertEquals(firstClass.getName(), secondClass.getName());
+        assertSame(first.getClassLoader(), firstClass.getClassLoader());
+        assertSame(second.getClassLoader(), secondClass.getClassLoader());
+        assertSame(firstClass,
+                first.instanceClass(Isolated.class, null, null));
+
+        BaseProxy.clear(first.getClassLoader());
+        assertFalse(classCaches().containsKey(first.getClassLoader()));
+        assertTrue(classCaches().containsKey(second.getClassLoader()));
+        assertSame(secondClass,
+                second.instanceClass(Isolated.class, null, null));
+        BaseProxy.clear(second.getClassLoader());
+    }
+
+    @Test
+    public void unusedClassLoaderIsUnloaded() throws Exception {
+        WeakReference<ClassLoader> loader = defineInUnusedLoader();
+        for (int i = 0; i < 50 && loader.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        // The collection is only requested, skip rather than fail.
+        assumeTrue("Class loader is not collected", loader.get() == null);
+    }
+
+    private static WeakReference<ClassLoader> defineInUnusedLoader()
+            throws Exception {
+        InstanceProxy proxy = definingProxy();
+        Class<?> proxyClass = proxy.instanceClass(Isolated.class, null, null);
+        assertNotNull(proxyClass);
+        assertTrue(classCaches().containsKey(proxy.getClassLoader()));
+        return new WeakReference<>(proxy.getClassLoader());
+    }
+
+    private static InstanceProxy definingProxy() {
+        InstanceProxy proxy = new InstanceProxy();
+        proxy.setClassLoader(new DefiningLoader());
+        proxy.setClassDefiner(DefiningLoader.DEFINER);
+        return proxy;
+    }
+
+    private static InstanceProxy cachingProxy(ProxyClassCache cache) {
+        InstanceProxy proxy = new InstanceProxy();
+        proxy.setClassLoader(new DefiningLoader());
+        proxy.setClassDefiner(DefiningLoader.DEFINER);
+        proxy.setClassFileCache(cache);
+        return proxy;
+    }
+
+    /**
+     * Get the proxy class of {@code parent} by {@link #THREADS} threads, the
+     * second half of which start after {@code lateDelay} milliseconds.
+     */
+    private static List<Class<?>> race(Class<?> parent, ClassDefiner definer,
+            long lateDelay) throws Exception {
+        InstanceProxy proxy = new InstanceProxy();
+        proxy.setClassDefiner(definer);
+        Method[] overrides = { parent.getMethod("name") };
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Class<?>>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                long delay = i < THREADS / 2 ? 0 : lateDelay;
+                Callable<Class<?>> task = () -> {
+                    start.await();
+                    Thread.sleep(delay);
+                    return proxy.instanceClass(parent, overrides, null);
+                };
+                futures.add(executor.submit(task));
+            }
+            start.countDown();
+            List<Class<?>> classes = new ArrayList<>();
+            for (Future<Class<?>> future : futures) {
+                classes.add(future.get(30, TimeUnit.SECONDS));
+            }
+            return classes;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void staticInitializerFillsInstanceMethodFields()
+            throws Exception {
+        InstanceProxy proxy = new InstanceProxy();
+        Class<?> proxyClass = proxy.instanceClass(Initialized.class,
+                Initialized.class.getDeclaredMethods(),
+                new Class<?>[] { Sized.class });
+        assertEquals(4, assertMethodFieldsFilled(proxyClass));
+    }
+
+    @Test
+    public void staticInitializerFillsWholeMethodFields() throws Exception {
+        Class<?> proxyClass = new WholeProxy().proxyClass(Initialized.class);
+        assertEquals(6, assertMethodFieldsFilled(proxyClass));
+        assertEquals("initialized",
+                proxyClass.getField("state").get(null));
+    }
+
+    /**
+     * Initialize {@code proxyClass} and check its static fields of
+     * {@link Method}.
+     * @return the count of the fields
+     */
+    private static int assertMethodFieldsFilled(Class<?> proxyClass)
+            throws Exception {
+        Class.forName(proxyClass.getName(), true,
+                proxyClass.getClassLoader());
+        int count = 0;
+        for (Field field : proxyClass.getDeclaredFields()) {
+            if (field.getType() == Method.class
+                    && Modifier.isStatic(field.getModifiers())) {
+                field.setAccessible(true);
+                assertNotNull(field.getName(), field.get(null));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<ClassLoader, ?> classCaches() throws Exception {
+        Field field = BaseProxy.class.getDeclaredField("classCaches");
+        field.setAccessible(true);
+        return (Map<ClassLoader, ?>) field.get(null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<ProxyKey, Object> generatingLocks() throws Exception {
+        Field field = BaseProxy.class.getDeclaredField("generatingLocks");
+        field.setAccessible(true);
+        return (Map<ProxyKey, Object>) field.get(null);
+    }
+
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class BatchingInterceptorTest {
+
+    public interface UserService {
+
+        String load(Long id);
+
+        String name();
+
+    }
+
+    private final Method load;
+
+    private final Method name;
+
+    private final List<Set<Long>> loaded = new CopyOnWriteArrayList<>();
+
+    private final Function<Set<Long>, Map<Long, String>> loader = ids -> {
+        loaded.add(new TreeSet<>(ids));
+        Map<Long, String> users = new HashMap<>();
+        for (Long id : ids) {
+            if (id >= 0) {
+                users.put(id, "user" + id);
+            }
+        }
+        return users;
+    };
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    public BatchingInterceptorTest() throws NoSuchMethodException {
+        load = UserService.class.getMethod("load", Long.class);
+        name = UserService.class.getMethod("name");
+    }
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentCallsAreCoalesced() throws Exception {
+        BatchingInterceptor<Long, String> batcher = new BatchingInterceptor<>(
+                load, loader, 8, 10, TimeUnit.SECONDS);
+        List<Future<Object>> results = callConcurrently(batcher, 0, 1, 2, 3,
+                4, 5, 6, 7);
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals("user" + i, results.get(i).get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loaded.size());
+        assertEquals(8, loaded.get(0).size());
+        assertEquals(8, batcher.getCallCount());
+        assertEquals(1, batcher.getBatchCount());
+    }
+
+    @Test
+    public void duplicateKeysAreLoadedOnce() throws Exception {
+        BatchingInterceptor<Long, String> batcher = new BatchingInterceptor<>(
+                load, loader, 8, 200, TimeUnit.MILLISECONDS);
+        for (Future<Object> result : callConcurrently(batcher, 1, 1, 1, 1)) {
+            assertEquals("user1", result.get(5, TimeUnit.SECONDS));
+        }
+        for (Set<Long> ids : loaded) {
+            assertEquals(1, ids.size());
+        }
+    }
+
+    @Test
+    public void batchIsClosedByWindowAndSize() throws Throwable {
+        BatchingInterceptor<Long, String> batcher = new BatchingInterceptor<>(
+                load, loader, 4, 100, TimeUnit.MILLISECONDS);
+        assertEquals("user1", call(batcher, 1L));
+        assertNull(call(batcher, -1L));
+        assertEquals(2, batcher.getBatchCount());
+        loaded.clear();
+        List<Future<Object>> results =
+                callConcurrently(batcher, 0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals("user" + i, results.get(i).get(5, TimeUnit.SECONDS));
+        }
+        assertTrue(loaded.size() >= 3);
+        for (Set<Long> ids : loaded) {
+            assertTrue(ids.toString(), ids.size() <= 4);
+        }
+    }
+
+    @Test
+    public void failureIsThrownToAllCallers() throws Throwable {
+        IllegalStateException failure = new IllegalStateException("down");
+        BatchingInterceptor<Long, String> batcher = new BatchingInterceptor<>(
+                load, ids -> {
+                    loaded.add(ids);
+                    throw failure;
+                }, 4, 10, TimeUnit.SECONDS);
+        for (Future<Object> result : callConcurrently(batcher, 0, 1, 2, 3)) {
+            try {
+                result.get(5, TimeUnit.SECONDS);
+                throw new AssertionError("no failure");
+            } catch (ExecutionException e) {
+                assertSame(failure, e.getCause());
+            }
+        }
+        assertEquals(1, loaded.size());
+        assertEquals(1, batcher.getBatchCount());
+    }
+
+    @Test
+    public void otherMethodsAreNotBatched() throws Throwable {
+        UserService delegate = new UserService() {
+
+            @Override
+            public String load(Long id) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public String name() {
+                return "delegate";
+            }
+
+        };
+        BatchingInterceptor<Long, String> batcher = new BatchingInterceptor<>(
+                load, loader, 4, 0, TimeUnit.MILLISECONDS, delegate);
+        assertEquals("delegate",
+                batcher.intercept(null, name, new Object[0], null));
+        BatchingInterceptor<Long, String> original = new BatchingInterceptor<>(
+                load, loader, 4, 0, TimeUnit.MILLISECONDS);
+        assertEquals("original", original.intercept(null, name,
+                new Object[0], (target, args) -> "original"));
+        assertEquals(0, batcher.getCallCount() + original.getCallCount());
+    }
+
+    private Object call(BatchingInterceptor<Long, String> batcher, Long id)
+            throws Throwable {
+        return batcher.intercept(null, load, new Object[] { id }, null);
+    }
+
+    private List<Future<Object>> callConcurrently(
+            BatchingInterceptor<Long, String> batcher, long... ids) {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Object>> results = new ArrayList<>();
+        for (long id : ids) {
+            Callable<Object> task = () -> {
+                start.await();
+                try {
+                    return call(batcher, id);
+                } catch (Exception e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new ExecutionException(e);
+                }
+            };
+            results.add(executor.submit(task));
+        }
+        start.countDown();
+        return results;
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.Method;
+
+import org.junit.Test;
+
+public class InstanceProxyTest {
+
+    public interface Greeting {
+        default String greet() {
+            return "hello";
+        }
+    }
+
+    public interface Polite extends Greeting {
+    }
+
+    public interface Other {
+        default String other() {
+            return "other";
+        }
+    }
+
+    public static class Base implements Polite {
+    }
+
+    public static class Plain {
+    }
+
+    public static class Named {
+
+        public String name() {
+            return "named";
+        }
+
+        public String title() {
+            return "title";
+        }
+
+    }
+
+    private final InstanceProxy proxy = new InstanceProxy();
+
+    private final MethodInterceptor wrapping =
+            (proxy, method, args, invoker) -> "<" + invoker.invoke(proxy, args)
+                    + ">";
+
+    @Test
+    public void defaultOfIndirectSuperinterface() throws Exception {
+        Method greet = Greeting.class.getMethod("greet");
+        ProxyFactory factory = proxy.instanceFactory(Plain.class,
+                new Method[] { greet }, new Class<?>[] { Polite.class });
+        assertEquals("<hello>",
+                ((Polite) factory.newInstance(wrapping)).greet());
+        assertEquals("hello", ((Polite) factory.newInstance(null)).greet());
+    }
+
+    @Test
+    public void defaultInheritedByParent() throws Exception {
+        Method greet = Base.class.getMethod("greet");
+        ProxyFactory factory = proxy.instanceFactory(Base.class,
+                new Method[] { greet }, null);
+        assertEquals("<hello>", ((Base) factory.newInstance(wrapping)).greet());
+        assertEquals("hello", ((Base) factory.newInstance(null)).greet());
+    }
+
+    @Test
+    public void defaultNotInheritedIsNotOverridden() throws Exception {
+        Method other = Other.class.getMethod("other");
+        Class<?> proxyClass = proxy.instanceClass(Plain.class,
+                new Method[] { other }, new Class<?>[] { Polite.class });
+        assertFalse(Other.class.isAssignableFrom(proxyClass));
+        for (Method method : proxyClass.getDeclaredMethods()) {
+            assertFalse(method.getName().startsWith("other"));
+        }
+        ((Polite) ProxyFactories.of(proxyClass).newInstance(wrapping))
+                .greet();
+    }
+
+    @Test
+    public void classIsSharedAcrossHandlers() {
+        Named first = (Named) proxy.instance(
+                (proxy, method, args) -> "first", Named.class);
+        Named second = (Named) proxy.instance(
+                (proxy, method, args) -> "second", Named.class);
+        assertSame(first.getClass(), second.getClass());
+        assertEquals("first", first.name());
+        assertEquals("second", second.name());
+    }
+
+    @Test
+    public void chainInterceptsMatchedMethodsOnly() {
+        InterceptorChain chain = InterceptorChain.of("name", wrapping);
+        Named named = (Named) ProxyHelper.intercept(chain, Named.class);
+        assertEquals("<named>", named.name());
+        assertEquals("title", named.title());
+        assertSame(named.getClass(),
+                proxy.intercept(chain, Named.class, null).getClass());
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class LazyProxyTest {
+
+    public interface Named {
+        String name();
+    }
+
+    public static class Counter {
+
+        private int count;
+
+        private final String owner;
+
+        public Counter() {
+            this("shell");
+        }
+
+        public Counter(String owner) {
+            this.owner = owner;
+        }
+
+        public int increment() {
+            return ++count;
+        }
+
+        protected String owner() {
+            return owner;
+        }
+
+    }
+
+    private final LazyProxy proxy = new LazyProxy();
+
+    @Test
+    public void targetIsCreatedOnFirstCall() {
+        AtomicInteger created = new AtomicInteger();
+        Named named = proxy.lazy(Named.class, () -> {
+            created.incrementAndGet();
+            return () -> "target";
+        });
+        assertEquals(named, named);
+        named.hashCode();
+        assertEquals(0, created.get());
+        assertEquals("target", named.name());
+        assertEquals("target", named.name());
+        assertEquals(1, created.get());
+    }
+
+    @Test
+    public void publicMethodsAreDelegated() {
+        Counter counter =
+                proxy.lazy(Counter.class, () -> new Counter("target"));
+        assertEquals(1, counter.increment());
+        assertEquals(2, counter.increment());
+        assertEquals("shell", counter.owner());
+    }
+
+    @Test
+    public void factoryCreatesInstances() throws Exception {
+        ProxyFactory factory = ProxyFactories.of(proxy.lazyClass(Named.class));
+        Named first = (Named) factory.newInstance(null,
+                new LazyTarget<Named>(() -> () -> "first"));
+        Named second = (Named) factory.newInstance(null,
+                new LazyTarget<Named>(() -> () -> "second"));
+        assertEquals("first", first.name());
+        assertEquals("second", second.name());
+        try {
+            factory.newInstance(null);
+            throw new AssertionError("created without target");
+        } catch (UnsupportedOperationException e) {
+            assertTrue(e.getMessage().contains("without target"));
+        }
+    }
+
+}
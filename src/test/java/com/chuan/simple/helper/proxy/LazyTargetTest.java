@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.chuan.simple.helper.exception.SimpleProxyException;
+
+public class LazyTargetTest {
+
+    @Test
+    public void targetIsCreatedOnce() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        LazyTarget<Object> target = new LazyTarget<>(() -> {
+            created.incrementAndGet();
+            sleep(50);
+            return new Object();
+        });
+        assertFalse(target.isInitialized());
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Object>> futures = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return target.get();
+                }));
+            }
+            start.countDown();
+            Object first = futures.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<Object> future : futures) {
+                assertSame(first, future.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, created.get());
+        assertTrue(target.isInitialized());
+    }
+
+    @Test
+    public void nullTargetIsRetried() {
+        AtomicInteger created = new AtomicInteger();
+        LazyTarget<String> target = new LazyTarget<>(
+                () -> created.incrementAndGet() == 1 ? null : "target");
+        try {
+            target.get();
+            throw new AssertionError("null target");
+        } catch (SimpleProxyException e) {
+            assertFalse(target.isInitialized());
+        }
+        assertEquals("target", target.get());
+        assertEquals("target", target.get());
+        assertEquals(2, created.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void factoryIsRequired() {
+        new LazyTarget<>(null);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class MemoizingInterceptorTest {
+
+    public static class Bean {
+
+        public String find(Object key) {
+            return String.valueOf(key);
+        }
+
+    }
+
+    private final Method find;
+
+    private final Object bean = new Bean();
+
+    private final AtomicInteger invocations = new AtomicInteger();
+
+    private final MethodInvoker invoker = (target, args) -> {
+        invocations.incrementAndGet();
+        Object key = args[0];
+        if ("fail".equals(key)) {
+            throw new IllegalStateException("fail");
+        }
+        if (key instanceof int[]) {
+            return Arrays.toString((int[]) key);
+        }
+        return key == null ? null : target + ":" + key;
+    };
+
+    public MemoizingInterceptorTest() throws NoSuchMethodException {
+        find = Bean.class.getMethod("find", Object.class);
+    }
+
+    @Test
+    public void resultsAreCachedByArguments() throws Throwable {
+        MemoizingInterceptor memoizer = new MemoizingInterceptor(8);
+        assertEquals(call(memoizer, bean, "a"), call(memoizer, bean, "a"));
+        call(memoizer, bean, "b");
+        assertNull(call(memoizer, bean, null));
+        assertNull(call(memoizer, bean, null));
+        assertEquals(3, invocations.get());
+        assertEquals(2, memoizer.getHitCount());
+        assertEquals(3, memoizer.getMissCount());
+        assertEquals(3, memoizer.size());
+    }
+
+    @Test
+    public void eldestResultsAreEvicted() throws Throwable {
+        MemoizingInterceptor memoizer = new MemoizingInterceptor(2);
+        call(memoizer, bean, "a");
+        call(memoizer, bean, "b");
+        call(memoizer, bean, "c");
+        assertEquals(2, memoizer.size());
+        assertEquals(1, memoizer.getEvictionCount());
+        call(memoizer, bean, "c");
+        assertEquals(3, invocations.get());
+        call(memoizer, bean, "a");
+        assertEquals(4, invocations.get());
+    }
+
+    @Test
+    public void resultsExpireAfterWrite() throws Throwable {
+        MemoizingInterceptor memoizer =
+                new MemoizingInterceptor(8, 50, TimeUnit.MILLISECONDS);
+        call(memoizer, bean, "a");
+        call(memoizer, bean, "a");
+        assertEquals(1, invocations.get());
+        Thread.sleep(100);
+        call(memoizer, bean, "a");
+        assertEquals(2, invocations.get());
+        assertEquals(0, memoizer.getEvictionCount());
+    }
+
+    @Test
+    public void proxiesDoNotShareResults() throws Throwable {
+        MemoizingInterceptor memoizer = new MemoizingInterceptor(8);
+        Object other = new Bean();
+        assertEquals(bean + ":a", call(memoizer, bean, "a"));
+        assertEquals(other + ":a", call(memoizer, other, "a"));
+        assertEquals(bean + ":a", call(memoizer, bean, "a"));
+        assertEquals(2, invocations.get());
+    }
+
+    @Test
+    public void arrayArgumentsAreCopied() throws Throwable {
+        MemoizingInterceptor memoizer = new MemoizingInterceptor(8);
+        int[] key = { 1 };
+        assertEquals("[1]", call(memoizer, bean, key));
+        key[0] = 2;
+        assertEquals("[2]", call(memoizer, bean, key));
+        assertEquals("[1]", call(memoizer, bean, new int[] { 1 }));
+        assertEquals(2, invocations.get());
+    }
+
+    @Test
+    public void exceptionsAreNotCached() throws Throwable {
+        MemoizingInterceptor memoizer = new MemoizingInterceptor(8);
+        for (int i = 0; i < 2; i++) {
+            try {
+                call(memoizer, bean, "fail");
+                throw new AssertionError("no exception");
+            } catch (IllegalStateException e) {
+                assertEquals("fail", e.getMessage());
+            }
+        }
+        assertEquals(2, invocations.get());
+        assertEquals(0, memoizer.size());
+    }
+
+    private Object call(MemoizingInterceptor memoizer, Object proxy,
+            Object key) throws Throwable {
+        return memoizer.intercept(proxy, find, new Object[] { key }, invoker);
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MethodDispatcherTest {
+
+    public static class Calculator {
+
+        private int resets;
+
+        public String calc(int value) {
+            return "int:" + value;
+        }
+
+        public String calc(long value) {
+            return "long:" + value;
+        }
+
+        public String calc(int[] values) {
+            return "int[]:" + values.length;
+        }
+
+        public String calc(String[][] values) {
+            return "String[][]:" + values[0][0];
+        }
+
+        public String calc(Object... values) {
+            return "Object...:" + values.length;
+        }
+
+        public long sum(long a, int b, long c) {
+            return a + b + c;
+        }
+
+        public double half(double value) {
+            return value / 2;
+        }
+
+        public boolean negative(int value) {
+            return value < 0;
+        }
+
+        public char initial(String value) {
+            return value.charAt(0);
+        }
+
+        public int[] twice(int[] values) {
+            int[] result = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                result[i] = values[i] * 2;
+            }
+            return result;
+        }
+
+        public void reset() {
+            resets++;
+        }
+
+        public int resets() {
+            return resets;
+        }
+
+    }
+
+    private final List<MethodInvoker> invokers = new ArrayList<>();
+
+    private final MethodInterceptor recording =
+            (proxy, method, args, invoker) -> {
+                invokers.add(invoker);
+                return invoker.invoke(proxy, args);
+            };
+
+    @Test
+    public void dispatchesOverloadsByIndex() throws Exception {
+        Calculator calculator = newCalculator();
+        assertEquals("int:1", calculator.calc(1));
+        assertEquals("long:2", calculator.calc(2L));
+        assertEquals("int[]:3", calculator.calc(new int[3]));
+        assertEquals("String[][]:x",
+                calculator.calc(new String[][] { { "x" } }));
+        assertEquals("Object...:2", calculator.calc("a", 1));
+        assertEquals(7L, calculator.sum(1L, 2, 4L));
+        assertEquals(1.5, calculator.half(3), 0);
+        assertTrue(calculator.negative(-1));
+        assertEquals('v', calculator.initial("value"));
+        assertArrayEquals(new int[] { 2, 4 },
+                calculator.twice(new int[] { 1, 2 }));
+        calculator.reset();
+        assertEquals(1, calculator.resets());
+        assertEquals(12, invokers.size());
+        for (MethodInvoker invoker : invokers) {
+            assertTrue(invoker.getClass().getName(),
+                    invoker instanceof PrimitiveInvoker);
+        }
+    }
+
+    @Test
+    public void dispatcherCoversEveryOverride() throws Exception {
+        Calculator calculator = newCalculator();
+        MethodDispatcher dispatcher = (MethodDispatcher) calculator.getClass()
+                .getMethod("getDispatcher$TEMPLATE").invoke(null);
+        int count = Calculator.class.getDeclaredMethods().length;
+        assertEquals(count, dispatcher.getMethodCount());
+        for (int index : new int[] { -1, count }) {
+            try {
+                dispatcher.invoke(index, calculator, new Object[0]);
+                fail("dispatched index " + index);
+            } catch (IllegalArgumentException e) {
+                assertEquals("No method of the index", e.getMessage());
+            } catch (Throwable e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    private Calculator newCalculator() throws Exception {
+        InstanceProxy proxy = new InstanceProxy();
+        return (Calculator) proxy.instanceFactory(Calculator.class,
+                Calculator.class.getDeclaredMethods(), null)
+                .newInstance(recording);
+    }
+
+}
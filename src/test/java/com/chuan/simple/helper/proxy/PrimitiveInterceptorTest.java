@@ -0,0 +1,180 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PrimitiveInterceptorTest {
+
+    public static class Meter {
+
+        private long count = 1;
+
+        private double ratio = 0.5;
+
+        private int size = 2;
+
+        public long count() {
+            return count;
+        }
+
+        public double ratio() {
+            return ratio;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void count(long count) {
+            this.count = count;
+        }
+
+        public void ratio(double ratio) {
+            this.ratio = ratio;
+        }
+
+        public void size(int size) {
+            this.size = size;
+        }
+
+        public long add(long a, long b) {
+            return a + b;
+        }
+
+    }
+
+    /**
+     * Records the callbacks and doubles the numbers passed through.
+     */
+    private static class Doubling implements PrimitiveInterceptor {
+
+        private final List<String> calls = new ArrayList<>();
+
+        @Override
+        public Object intercept(Object proxy, Method method, Object[] args,
+                MethodInvoker invoker) throws Throwable {
+            calls.add("intercept " + name(method));
+            return invoker.invoke(proxy, args);
+        }
+
+        @Override
+        public long interceptLong(Object proxy, Method method,
+                PrimitiveInvoker invoker) throws Throwable {
+            calls.add("long " + name(method));
+            return invoker.invokeLong(proxy) * 2;
+        }
+
+        @Override
+        public double interceptDouble(Object proxy, Method method,
+                PrimitiveInvoker invoker) throws Throwable {
+            calls.add("double " + name(method));
+            return invoker.invokeDouble(proxy) * 2;
+        }
+
+        @Override
+        public int interceptInt(Object proxy, Method method,
+                PrimitiveInvoker invoker) throws Throwable {
+            calls.add("int " + name(method));
+            return invoker.invokeInt(proxy) * 2;
+        }
+
+        @Override
+        public void interceptVoid(Object proxy, Method method, long arg,
+                PrimitiveInvoker invoker) throws Throwable {
+            calls.add("void(long) " + name(method));
+            invoker.invokeVoid(proxy, arg * 2);
+        }
+
+        @Override
+        public void interceptVoid(Object proxy, Method method, double arg,
+                PrimitiveInvoker invoker) throws Throwable {
+            calls.add("void(double) " + name(method));
+            invoker.invokeVoid(proxy, arg * 2);
+        }
+
+        @Override
+        public void interceptVoid(Object proxy, Method method, int arg,
+                PrimitiveInvoker invoker) throws Throwable {
+            calls.add("void(int) " + name(method));
+            invoker.invokeVoid(proxy, arg * 2);
+        }
+
+        /**
+         * The name of the method without {@link BaseProxy#PROXY_SUFFIX},
+         * the original is passed to the interceptor.
+         */
+        private static String name(Method method) {
+            return method.getName().replace(BaseProxy.PROXY_SUFFIX, "");
+        }
+
+    }
+
+    @Test
+    public void primitiveSignaturesUseSpecializedCallbacks() throws Exception {
+        Doubling doubling = new Doubling();
+        Meter meter = newMeter(doubling);
+        assertEquals(2L, meter.count());
+        assertEquals(1.0, meter.ratio(), 0);
+        assertEquals(4, meter.size());
+        meter.count(3L);
+        meter.ratio(1.5);
+        meter.size(5);
+        assertEquals(12L, meter.count());
+        assertEquals(6.0, meter.ratio(), 0);
+        assertEquals(20, meter.size());
+        assertEquals(7L, meter.add(3L, 4L));
+        assertEquals(Arrays.asList("long count", "double ratio", "int size",
+                "void(long) count", "void(double) ratio", "void(int) size",
+                "long count", "double ratio", "int size", "intercept add"),
+                doubling.calls);
+    }
+
+    @Test
+    public void plainInterceptorReceivesBoxedValues() throws Exception {
+        List<Object> values = new ArrayList<>();
+        MethodInterceptor recording = (proxy, method, args, invoker) -> {
+            values.addAll(Arrays.asList(args));
+            Object result = invoker.invoke(proxy, args);
+            values.add(result);
+            return result;
+        };
+        Meter meter = newMeter(recording);
+        meter.count(3L);
+        meter.ratio(1.5);
+        meter.size(5);
+        assertEquals(3L, meter.count());
+        assertEquals(1.5, meter.ratio(), 0);
+        assertEquals(5, meter.size());
+        assertEquals(Arrays.<Object> asList(3L, null, 1.5, null, 5, null, 3L,
+                1.5, 5), values);
+    }
+
+    private static Meter newMeter(MethodInterceptor interceptor)
+            throws Exception {
+        return (Meter) new InstanceProxy().instanceFactory(Meter.class,
+                Meter.class.getDeclaredMethods(), null)
+                .newInstance(interceptor);
+    }
+
+}
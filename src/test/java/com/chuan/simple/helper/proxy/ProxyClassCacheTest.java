@@ -0,0 +1,95 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class ProxyClassCacheTest {
+
+    public interface Root {
+    }
+
+    public interface Middle extends Root {
+    }
+
+    public interface Leaf extends Middle {
+    }
+
+    public static class Parent implements Leaf {
+    }
+
+    public static class Child extends Parent {
+    }
+
+    private final ClassLoader loader = getClass().getClassLoader();
+
+    @Test
+    public void digestCoversSuperInterfaces() {
+        Set<Class<?>> classes = ProxyClassCache.getClasses(
+                ProxyKey.whole(Child.class, null, loader));
+        assertTrue(classes.toString(), classes.containsAll(Arrays.asList(
+                Child.class, Parent.class, Leaf.class, Middle.class,
+                Root.class)));
+        classes = ProxyClassCache.getClasses(ProxyKey.instance(Object.class,
+                null, new Class<?>[] { Leaf.class }, loader));
+        assertTrue(classes.toString(), classes.containsAll(
+                Arrays.asList(Leaf.class, Middle.class, Root.class)));
+    }
+
+    @Test
+    public void digestCoversGenerator() {
+        List<Class<?>> generator =
+                Arrays.asList(ProxyClassCache.GENERATOR_CLASSES);
+        assertTrue(generator.containsAll(Arrays.asList(BaseProxy.class,
+                InstanceProxy.class, WholeProxy.class, WrapProxy.class,
+                LazyProxy.class, ProxyFactories.class, Template.class)));
+    }
+
+    @Test
+    public void writeLeavesOnlyEntry() throws Exception {
+        Path directory = Files.createTempDirectory("proxy-cache");
+        ProxyClassCache cache = new ProxyClassCache(directory);
+        ProxyKey key = ProxyKey.whole(Child.class, null, loader);
+        String digest = cache.digest(key);
+        assertNotNull(digest);
+        Map<String, byte[]> classes = Collections.singletonMap(
+                key.getClassName(), new byte[] { 1, 2, 3 });
+        cache.write(key, classes);
+        cache.write(key, classes);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(Collections.singletonList(
+                    digest + ProxyClassCache.FILE_SUFFIX),
+                    files.map(file -> file.getFileName().toString())
+                            .collect(Collectors.toList()));
+        }
+        assertEquals(3, cache.read(key).get(key.getClassName()).length);
+    }
+
+}
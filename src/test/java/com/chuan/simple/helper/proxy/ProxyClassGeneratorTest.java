@@ -0,0 +1,88 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ProxyClassGeneratorTest {
+
+    public interface Api {
+
+        String name();
+
+    }
+
+    public static class Service {
+
+        public String name() {
+            return "service";
+        }
+
+    }
+
+    public static class Whole {
+
+        public String name() {
+            return "whole";
+        }
+
+    }
+
+    private final ClassLoader loader = getClass().getClassLoader();
+
+    @Test
+    public void classesAreDefinedByLoaderOfTarget() throws Exception {
+        ProxyClassGenerator generator = new ProxyClassGenerator(loader);
+        generator.declare("# comment");
+        generator.declare("instance " + Service.class.getName());
+        generator.declare("whole " + Whole.class.getName());
+        Map<String, byte[]> classes = generator.getClasses();
+        assertEquals(classes.keySet().toString(), 6, classes.size());
+        for (String name : classes.keySet()) {
+            if (name.endsWith(ProxyFactories.FACTORY_SUFFIX)) {
+                continue;
+            }
+            Class<?> clazz =
+                    Class.forName(name.replace('/', '.'), false, loader);
+            assertEquals(name, loader, clazz.getClassLoader());
+        }
+        assertEquals(2, classes.keySet().stream().filter(
+                name -> name.endsWith(ProxyFactories.FACTORY_SUFFIX)).count());
+    }
+
+    @Test
+    public void interfaceProxyIsDefinedInPackageOfInterface()
+            throws Exception {
+        ProxyClassGenerator generator = new ProxyClassGenerator(loader);
+        generator.declare("instance java.lang.Object " + Api.class.getName());
+        String prefix = Api.class.getName().replace('.', '/')
+                + BaseProxy.LINK_STR;
+        for (String name : generator.getClasses().keySet()) {
+            assertTrue(name, name.startsWith(prefix));
+        }
+        String proxyName = generator.getClasses().keySet().iterator().next();
+        Class<?> clazz =
+                Class.forName(proxyName.replace('/', '.'), false, loader);
+        assertEquals(Object.class, clazz.getSuperclass());
+        assertTrue(Api.class.isAssignableFrom(clazz));
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+
+public class ProxyFactoriesTest {
+
+    public static class Holder {
+
+        private final Object value;
+
+        public Holder() {
+            this("default");
+        }
+
+        public Holder(Object value) {
+            this.value = value;
+        }
+
+        public Object value() {
+            return value;
+        }
+
+    }
+
+    public static class Defined {
+
+        public String name() {
+            return "defined";
+        }
+
+    }
+
+    private final InvocationHandler passing =
+            (proxy, method, args) -> method.invoke(proxy, args);
+
+    @Test
+    public void wholeProxyHasNoTargetConstructor() throws Exception {
+        WholeProxy proxy = new WholeProxy();
+        ProxyFactory factory = proxy.proxyFactory(Holder.class,
+                method -> method.getName().equals("value"));
+        Object instance = factory.newInstance(passing);
+        assertEquals("default",
+                instance.getClass().getMethod("value").invoke(instance));
+        try {
+            factory.newInstance(passing, "target");
+            throw new AssertionError("constructed with a target");
+        } catch (UnsupportedOperationException e) {
+            assertTrue(e.getMessage().contains("with target"));
+        }
+    }
+
+    @Test
+    public void factoryIsDefinedByClassDefinerOfProxy() throws Exception {
+        List<String> names = new CopyOnWriteArrayList<>();
+        ClassDefiner recording = (classLoader, host, name, bytes) -> {
+            names.add(name);
+            return ClassDefiners.getDefault().define(classLoader, host, name,
+                    bytes);
+        };
+        InstanceProxy proxy = new InstanceProxy();
+        proxy.setClassDefiner(recording);
+        Method name = Defined.class.getMethod("name");
+        ProxyFactory factory = proxy.instanceFactory(Defined.class,
+                new Method[] { name }, null);
+        assertNotNull(factory.newInstance(passing));
+        Class<?> proxyClass = proxy.instanceClass(Defined.class,
+                new Method[] { name }, null);
+        assertTrue(names.toString(), names.contains(
+                proxyClass.getName() + BaseProxy.LINK_STR
+                        + ProxyFactories.FACTORY_SUFFIX));
+    }
+
+}
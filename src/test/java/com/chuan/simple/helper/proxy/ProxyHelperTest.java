@@ -0,0 +1,111 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.InvocationHandler;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class ProxyHelperTest {
+
+    public static class Base {
+
+        public String name() {
+            return "base";
+        }
+
+    }
+
+    public static class Derived extends Base {
+
+        @Override
+        public String name() {
+            return "derived";
+        }
+
+    }
+
+    public static class Counter {
+
+        public int count() {
+            return 1;
+        }
+
+    }
+
+    public static class Greeter {
+
+        public String greet() {
+            return "hi";
+        }
+
+    }
+
+    public static class LoudGreeter extends Greeter {
+
+        @Override
+        public String greet() {
+            return "HI";
+        }
+
+    }
+
+    private final InvocationHandler passing =
+            (proxy, method, args) -> method.invoke(proxy, args);
+
+    @Test
+    public void preparedClassesAreInOrderAndReused() throws Exception {
+        // The subclass goes first, each class needs only its own target.
+        List<ProxySpec> specs = Arrays.asList(ProxySpec.instance(Derived.class),
+                ProxySpec.whole(Counter.class),
+                ProxySpec.wrap(Greeter.class, LoudGreeter.class),
+                ProxySpec.instance(Base.class));
+        ForkJoinPool pool = new ForkJoinPool(2);
+        List<Class<?>> classes;
+        try {
+            classes = ProxyHelper.prepare(specs, pool);
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(specs.size(), classes.size());
+        for (int i = 0; i < specs.size(); i++) {
+            assertNotNull(specs.get(i).getKind(), classes.get(i));
+        }
+        assertSame(Derived.class, classes.get(0).getSuperclass());
+        assertSame(Base.class, classes.get(3).getSuperclass());
+
+        assertSame(classes.get(0),
+                ProxyHelper.instance(passing, Derived.class).getClass());
+        assertSame(classes.get(1), ProxyHelper.proxyClass(Counter.class));
+        assertSame(classes.get(1),
+                ProxyHelper.proxy(Counter.class, passing).getClass());
+        Greeter greeter =
+                (Greeter) ProxyHelper.wrap(Greeter.class, new LoudGreeter());
+        assertSame(classes.get(2), greeter.getClass());
+        assertEquals("HI", greeter.greet());
+        assertSame(classes.get(3),
+                ProxyHelper.instance(passing, Base.class).getClass());
+        assertEquals(classes, ProxyHelper.prepare(specs));
+    }
+
+}
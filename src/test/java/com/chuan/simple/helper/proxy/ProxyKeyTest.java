@@ -0,0 +1,158 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+
+import org.junit.Test;
+
+public class ProxyKeyTest {
+
+    public interface Api {
+        String name();
+    }
+
+    public static class Bean {
+
+        public String name() {
+            return "bean";
+        }
+
+        public int size() {
+            return 0;
+        }
+
+    }
+
+    private final ClassLoader loader = getClass().getClassLoader();
+
+    @Test
+    public void interfacesAndMethodsAreUnordered() throws Exception {
+        Method name = Bean.class.getMethod("name");
+        Method size = Bean.class.getMethod("size");
+        ProxyKey key = ProxyKey.instance(Bean.class,
+                new Method[] { name, size },
+                new Class<?>[] { Api.class, Serializable.class }, loader);
+        ProxyKey other = ProxyKey.instance(Bean.class,
+                new Method[] { size, name },
+                new Class<?>[] { Serializable.class, Api.class, Api.class },
+                loader);
+        assertEquals(key, other);
+        assertEquals(key.hashCode(), other.hashCode());
+        assertEquals(key.getClassName(), other.getClassName());
+        assertEquals(2, other.getInterfaces().length);
+    }
+
+    @Test
+    public void structureDiffers() throws Exception {
+        Method name = Bean.class.getMethod("name");
+        ProxyKey all = ProxyKey.whole(Bean.class, null, loader);
+        ProxyKey selected =
+                ProxyKey.whole(Bean.class, new Method[] { name }, null, loader);
+        ProxyKey none =
+                ProxyKey.whole(Bean.class, new Method[0], null, loader);
+        assertNotEquals(all, selected);
+        assertNotEquals(all, none);
+        assertNotEquals(all.getClassName(), none.getClassName());
+        assertNotEquals(ProxyKey.wrap(Bean.class, Bean.class, loader),
+                ProxyKey.whole(Bean.class, null, loader));
+        assertNotEquals(ProxyKey.lazy(Bean.class, loader),
+                ProxyKey.lazy(Bean.class, new ClassLoader(loader) {
+                }));
+    }
+
+    @Test
+    public void boundKeysCompareBindingByIdentity() {
+        Object binding = new Object();
+        ProxyKey key = ProxyKey.whole(Bean.class, binding, loader);
+        assertEquals(key, ProxyKey.whole(Bean.class, binding, loader));
+        assertNotEquals(key,
+                ProxyKey.whole(Bean.class, new Object(), loader));
+        assertTrue(key.isBound());
+        assertNotEquals(key.getClassName(),
+                ProxyKey.whole(Bean.class, binding, loader).getClassName());
+    }
+
+    @Test
+    public void classNameIsDerivedFromStructure() {
+        String className = ProxyKey.whole(Bean.class, null, loader)
+                .getClassName();
+        assertTrue(className, className.matches(
+                "com/chuan/simple/helper/proxy/ProxyKeyTest\\$Bean"
+                        + "\\$\\$Whole\\$\\$[0-9a-f]{16}"));
+        assertTrue(ProxyKey.instance(Object.class, null, null, loader)
+                .getClassName().startsWith("proxy/java/lang/Object"));
+        assertTrue(ProxyKey.instance(Object.class, null,
+                new Class<?>[] { Runnable.class, Api.class }, loader)
+                .getClassName().startsWith(
+                        Api.class.getName().replace('.', '/') + "$$"));
+    }
+
+    @Test
+    public void sameNamedInterfacesOfOtherLoaderAreDistinct()
+            throws Exception {
+        Class<?> copy = new CopyingLoader().copy(Api.class);
+        assertNotSame(Api.class, copy);
+        assertEquals(Api.class.getName(), copy.getName());
+        ProxyKey key = ProxyKey.instance(Object.class, null,
+                new Class<?>[] { Api.class }, loader);
+        ProxyKey other = ProxyKey.instance(Object.class, null,
+                new Class<?>[] { copy }, loader);
+        assertNotEquals(key, other);
+        assertEquals(copy, other.getInterfaces()[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sameNamedInterfacesAreRejectedTogether() throws Exception {
+        Class<?> copy = new CopyingLoader().copy(Api.class);
+        ProxyKey.instance(Object.class, null,
+                new Class<?>[] { Api.class, copy }, loader);
+    }
+
+    /**
+     * Defines another class of the same name and bytecode.
+     */
+    private static class CopyingLoader extends ClassLoader {
+
+        private CopyingLoader() {
+            super(null);
+        }
+
+        private Class<?> copy(Class<?> clazz) throws Exception {
+            String resource = clazz.getName().replace('.', '/') + ".class";
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (InputStream in =
+                    clazz.getClassLoader().getResourceAsStream(resource)) {
+                byte[] buffer = new byte[4096];
+                for (int n; (n = in.read(buffer)) > 0;) {
+                    bytes.write(buffer, 0, n);
+                }
+            }
+            byte[] b = bytes.toByteArray();
+            return defineClass(clazz.getName(), b, 0, b.length);
+        }
+
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.InvocationHandler;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class WholeProxyTest {
+
+    public static class Counter {
+
+        public String count() {
+            return "count";
+        }
+
+        public String name() {
+            return "counter";
+        }
+
+    }
+
+    private final WholeProxy proxy = new WholeProxy();
+
+    @Test
+    public void classIsSharedAcrossHandlers() throws Exception {
+        Object first = proxy.proxy(Counter.class, prefixing("first:"));
+        Object second = proxy.proxy(Counter.class, prefixing("second:"));
+        assertSame(first.getClass(), second.getClass());
+        assertSame(first.getClass(), proxy.proxyClass(Counter.class));
+        assertEquals("first:count", call(first, "count"));
+        assertEquals("second:count", call(second, "count"));
+    }
+
+    @Test
+    public void unselectedMethodsBypassHandler() throws Exception {
+        List<String> calls = new ArrayList<>();
+        InvocationHandler prefixing = prefixing("selected:");
+        Object selected = proxy.proxy(Counter.class, (proxy, method, args) -> {
+            calls.add(method.getName());
+            return prefixing.invoke(proxy, method, args);
+        }, method -> "count".equals(method.getName()));
+        assertNotSame(proxy.proxyClass(Counter.class), selected.getClass());
+        // Constructors are always redirected.
+        calls.clear();
+        assertEquals("selected:count", call(selected, "count"));
+        assertEquals("counter", call(selected, "name"));
+        assertEquals(Collections.singletonList(
+                "count" + BaseProxy.PROXY_SUFFIX), calls);
+    }
+
+    private static InvocationHandler prefixing(String prefix) {
+        return (proxy, method, args) -> {
+            Object result = method.invoke(proxy, args);
+            return result instanceof String ? prefix + result : result;
+        };
+    }
+
+    private static Object call(Object instance, String name)
+            throws Exception {
+        return instance.getClass().getMethod(name).invoke(instance);
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2018-2021 Bingchuan Sun.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chuan.simple.helper.proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.InvocationHandler;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class WrapProxyTest {
+
+    public static class Greeter {
+
+        public String greet() {
+            return "hi";
+        }
+
+        public String bye() {
+            return "bye";
+        }
+
+    }
+
+    public static class Named extends Greeter {
+
+        private final String name;
+
+        public Named(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String greet() {
+            return "hi " + name;
+        }
+
+    }
+
+    private final WrapProxy proxy = new WrapProxy();
+
+    private final InvocationHandler shouting =
+            (proxy, method, args) -> ((String) method.invoke(proxy, args))
+                    .toUpperCase();
+
+    @Test
+    public void classIsSharedAcrossInstances() {
+        Greeter first = (Greeter) proxy.wrap(Greeter.class, new Named("a"));
+        Greeter second = (Greeter) proxy.wrap(Greeter.class, new Named("b"),
+                shouting);
+        assertSame(first.getClass(), second.getClass());
+        assertEquals("hi a", first.greet());
+        assertEquals("HI B", second.greet());
+    }
+
+    @Test
+    public void unselectedMethodsAreDelegatedDirectly() {
+        AtomicInteger calls = new AtomicInteger();
+        Greeter greeter = (Greeter) proxy.wrap(Greeter.class, new Named("f"),
+                (proxy, method, args) -> {
+                    calls.incrementAndGet();
+                    return shouting.invoke(proxy, method, args);
+                }, method -> "greet".equals(method.getName()));
+        assertNotSame(proxy.wrapClass(Greeter.class, Named.class),
+                greeter.getClass());
+        assertEquals("HI F", greeter.greet());
+        assertEquals("bye", greeter.bye());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void boundClassIsCreatedWithoutParameters() throws Exception {
+        Named named = new Named("c");
+        Class<?> bound = proxy.wrapClass(Greeter.class, named, shouting);
+        assertSame(bound, proxy.wrapClass(Greeter.class, named, shouting));
+        assertSame(proxy.wrapClass(Greeter.class, Named.class),
+                bound.getSuperclass());
+        assertEquals("HI C", newGreeter(bound).greet());
+
+        proxy.setTarget(bound, new Named("d"));
+        assertEquals("HI D", newGreeter(bound).greet());
+        Class<?> rebound = proxy.wrapClass(Greeter.class, named, shouting);
+        assertNotSame(bound, rebound);
+        assertEquals("HI C", newGreeter(rebound).greet());
+        assertEquals("hi e",
+                newGreeter(proxy.wrapClass(Greeter.class, new Named("e"),
+                        null)).greet());
+    }
+
+    private static Greeter newGreeter(Class<?> clazz) throws Exception {
+        return (Greeter) clazz.getDeclaredConstructor().newInstance();
+    }
+
+}